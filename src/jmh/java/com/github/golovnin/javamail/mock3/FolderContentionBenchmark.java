@@ -0,0 +1,115 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import jakarta.mail.Flags.Flag;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of concurrent readers of one {@link MailboxFolder},
+ * alone and while another thread keeps changing flags.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class FolderContentionBenchmark {
+
+    private static final int RANGE = 100;
+
+    @Param({ "10000" })
+    private int size;
+
+    private MailboxFolder folder;
+
+    @Setup
+    public void setUp() throws MessagingException {
+        folder = MockMailbox.get("benchmark@localhost").getInbox();
+        MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Benchmark");
+        msg.setText("Some text here ...");
+        msg.saveChanges();
+        for (int i = 0; i < size; i++) {
+            folder.add(msg);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        MockMailbox.resetAll();
+    }
+
+    private long randomUid() {
+        return ThreadLocalRandom.current().nextInt(size) + 11;
+    }
+
+    private Object read() {
+        long uid = randomUid();
+        folder.getMessageCount();
+        folder.getMessageCount(Flag.SEEN, false);
+        folder.getById(uid);
+        return folder.getByIds(uid, uid + RANGE);
+    }
+
+    @Benchmark
+    @Group("readers")
+    @GroupThreads(4)
+    public Object readersOnly() {
+        return read();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public Object mixedReader() {
+        return read();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedWriter() throws MessagingException {
+        folder.getById(randomUid()).setFlag(Flag.SEEN, ThreadLocalRandom.current().nextBoolean());
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares {@link MessageStore} with the {@code TreeMap<Long, MockMessage>}
+ * previously used by {@link MailboxFolder}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageStoreBenchmark {
+
+    private static final int RANGE = 100;
+
+    @Param({ "1000", "100000" })
+    private int size;
+
+    private MockMessage[] source;
+    private TreeMap<Long, MockMessage> treeMap;
+    private MessageStore store;
+
+    @Setup
+    public void setUp() throws MessagingException {
+        MimeMessage template = new MimeMessage((Session) null);
+        template.setSubject("Benchmark");
+        template.setText("Some text here ...");
+        template.saveChanges();
+
+        source = new MockMessage[size];
+        for (int i = 0; i < size; i++) {
+            source[i] = new MockMessage(template, i + 11, null, null);
+        }
+
+        treeMap = fillTreeMap();
+        store = fillStore();
+    }
+
+    private TreeMap<Long, MockMessage> fillTreeMap() {
+        TreeMap<Long, MockMessage> map = new TreeMap<>();
+        for (MockMessage message : source) {
+            map.put(message.getMockid(), message);
+        }
+        return map;
+    }
+
+    private MessageStore fillStore() {
+        MessageStore result = new MessageStore();
+        for (MockMessage message : source) {
+            result.add(message);
+        }
+        return result;
+    }
+
+    private long randomUid() {
+        return ThreadLocalRandom.current().nextInt(size) + 11;
+    }
+
+    @Benchmark
+    public Object addTreeMap() {
+        return fillTreeMap();
+    }
+
+    @Benchmark
+    public Object addStore() {
+        return fillStore();
+    }
+
+    @Benchmark
+    public Object getByUidTreeMap() {
+        return treeMap.get(randomUid());
+    }
+
+    @Benchmark
+    public Object getByUidStore() {
+        return store.get(randomUid());
+    }
+
+    @Benchmark
+    public void rangeScanTreeMap(Blackhole bh) {
+        long start = randomUid();
+        for (MockMessage message : treeMap.subMap(start, start + RANGE).values()) {
+            bh.consume(message);
+        }
+    }
+
+    @Benchmark
+    public void rangeScanStore(Blackhole bh) {
+        long start = randomUid();
+        int to = store.lowerBound(start + RANGE);
+        for (int i = store.lowerBound(start); i < to; i++) {
+            bh.consume(store.getAt(i));
+        }
+    }
+
+    @Benchmark
+    public Object rangeCopyStore() {
+        long start = randomUid();
+        return store.copyRange(store.lowerBound(start), store.lowerBound(start + RANGE));
+    }
+
+    @Benchmark
+    public Object rangeCopyTreeMap() {
+        long start = randomUid();
+        List<Message> result = new ArrayList<>();
+        result.addAll(treeMap.subMap(start, start + RANGE).values());
+        return result;
+    }
+
+    // the expunge benchmarks include refilling the structure, compare them
+    // with the corresponding add benchmark
+    @Benchmark
+    public Object expungeTreeMap() {
+        Map<Long, MockMessage> map = fillTreeMap();
+        Iterator<Long> it = map.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next() % 10 == 0) {
+                it.remove();
+            }
+        }
+        return map;
+    }
+
+    @Benchmark
+    public Object expungeStore() {
+        MessageStore result = fillStore();
+        result.removeIf(m -> m.getMockid() % 10 == 0);
+        return result;
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import jakarta.mail.Flags;
+import jakarta.mail.Flags.Flag;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.search.AndTerm;
+import jakarta.mail.search.BodyTerm;
+import jakarta.mail.search.FlagTerm;
+import jakarta.mail.search.SearchTerm;
+import jakarta.mail.search.SubjectTerm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares matching a mixed {@link SearchTerm} against every message with
+ * the planned {@link MailboxFolder#search(SearchTerm, Message[])}, with
+ * and without the header index and parallel matching.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    @Param({ "1000", "10000" })
+    private int size;
+
+    @Param({ "false", "true" })
+    private boolean indexed;
+
+    @Param({ "false", "true" })
+    private boolean parallel;
+
+    private MailboxFolder folder;
+    private SearchTerm term;
+
+    @Setup
+    public void setUp() throws MessagingException {
+        folder = MockMailbox.get("benchmark@localhost").getInbox();
+        for (int i = 0; i < size; i++) {
+            MimeMessage msg = new MimeMessage((Session) null);
+            msg.setSubject("Message " + i + (i % 100 == 0 ? " report" : ""));
+            msg.setFrom("sender" + (i % 50) + "@localhost");
+            msg.setText("Some text here ... " + i);
+            msg.saveChanges();
+            folder.add(msg);
+        }
+
+        // every third message is unread
+        for (Message msg : folder.getMessages()) {
+            if (msg.getMessageNumber() % 3 != 0) {
+                msg.setFlag(Flag.SEEN, true);
+            }
+        }
+
+        if (indexed) {
+            folder.enableSearchIndex();
+        }
+        if (parallel) {
+            folder.enableParallelSearch(ForkJoinPool.commonPool(), 1000);
+        }
+
+        term = new AndTerm(new SearchTerm[] {
+            new BodyTerm("text"),
+            new SubjectTerm("report"),
+            new FlagTerm(new Flags(Flag.SEEN), false)
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        MockMailbox.resetAll();
+    }
+
+    @Benchmark
+    public Object linearScan() {
+        List<Message> result = new ArrayList<>();
+        for (Message msg : folder.getMessages()) {
+            if (term.match(msg)) {
+                result.add(msg);
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Object plannedSearch() {
+        return folder.search(term, null);
+    }
+
+}
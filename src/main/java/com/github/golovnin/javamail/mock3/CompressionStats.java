@@ -0,0 +1,107 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics of the compressed storage of a {@link MailboxFolder}, see
+ * {@link MailboxFolder#enableCompression(int)}.
+ */
+public final class CompressionStats {
+
+    static final CompressionStats EMPTY = new CompressionStats(0, 0, 0, 0, 0, 0);
+
+    private final long messageCount;
+    private final long uncompressedBytes;
+    private final long compressedBytes;
+    private final long decodeCount;
+    private final long decodeNanos;
+    private final long cacheHits;
+
+    CompressionStats(long messageCount, long uncompressedBytes,
+        long compressedBytes, long decodeCount, long decodeNanos,
+        long cacheHits)
+    {
+        this.messageCount = messageCount;
+        this.uncompressedBytes = uncompressedBytes;
+        this.compressedBytes = compressedBytes;
+        this.decodeCount = decodeCount;
+        this.decodeNanos = decodeNanos;
+        this.cacheHits = cacheHits;
+    }
+
+    /**
+     * @return the number of compressed message contents
+     */
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    /**
+     * @return the uncompressed size divided by the compressed size, 1 if
+     *         nothing has been compressed yet
+     */
+    public double getCompressionRatio() {
+        return compressedBytes == 0 ? 1 : (double) uncompressedBytes / compressedBytes;
+    }
+
+    /**
+     * @return the number of contents decompressed, not counting the ones
+     *         served by the cache
+     */
+    public long getDecodeCount() {
+        return decodeCount;
+    }
+
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * @return the average time it took to decompress a content
+     */
+    public long getAverageDecodeTime(TimeUnit unit) {
+        return decodeCount == 0 ? 0 : unit.convert(decodeNanos / decodeCount, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionStats[messages=" + messageCount
+            + ", uncompressed=" + uncompressedBytes
+            + ", compressed=" + compressedBytes
+            + ", ratio=" + String.format(Locale.ROOT, "%.2f", getCompressionRatio())
+            + ", decodes=" + decodeCount
+            + ", cacheHits=" + cacheHits
+            + ", averageDecodeMicros=" + getAverageDecodeTime(TimeUnit.MICROSECONDS) + ']';
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+import jakarta.mail.internet.SharedInputStream;
+
+/**
+ * Deflate codec for the stored contents of the messages of a folder. The
+ * most recently decoded contents are kept in a small LRU cache; the codec
+ * keeps statistics about the compression ratio and the decode latency.
+ */
+final class ContentCodec {
+
+    static final int DEFAULT_CACHE_SIZE = 64;
+
+    private final Map<ContentStore.Entry, byte[]> decoded;
+
+    private long encodeCount;
+    private long uncompressedBytes;
+    private long compressedBytes;
+    private long decodeCount;
+    private long decodeNanos;
+    private long cacheHits;
+
+    ContentCodec(int cacheSize) {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("cache size must not be negative: " + cacheSize);
+        }
+        decoded = new LinkedHashMap<ContentStore.Entry, byte[]>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ContentStore.Entry, byte[]> eldest) {
+                return size() > cacheSize;
+            }
+
+        };
+    }
+
+    byte[] encode(byte[] bytes) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 16);
+            byte[] buf = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                out.write(buf, 0, n);
+            }
+            byte[] result = out.toByteArray();
+
+            synchronized (this) {
+                encodeCount++;
+                uncompressedBytes += bytes.length;
+                compressedBytes += result.length;
+            }
+            return result;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return the decoded content of the given entry, which must not be
+     *         modified
+     */
+    byte[] decode(ContentStore.Entry entry, int length) throws IOException {
+        synchronized (this) {
+            byte[] cached = decoded.get(entry);
+            if (cached != null) {
+                cacheHits++;
+                return cached;
+            }
+        }
+
+        long start = System.nanoTime();
+        byte[] result = new byte[length];
+        try (InputStream in = new InflaterInputStream(
+            ((SharedInputStream) entry.stream()).newStream(0, -1)))
+        {
+            int off = 0;
+            int n;
+            while (off < length && (n = in.read(result, off, length - off)) > 0) {
+                off += n;
+            }
+            if (off < length) {
+                throw new IOException("content truncated: " + off + " of " + length + " bytes");
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        synchronized (this) {
+            decodeCount++;
+            decodeNanos += elapsed;
+            decoded.put(entry, result);
+        }
+        return result;
+    }
+
+    synchronized CompressionStats getStats() {
+        return new CompressionStats(encodeCount, uncompressedBytes,
+            compressedBytes, decodeCount, decodeNanos, cacheHits);
+    }
+
+}
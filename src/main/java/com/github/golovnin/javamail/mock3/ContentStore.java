@@ -0,0 +1,241 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jakarta.mail.util.SharedByteArrayInputStream;
+
+/**
+ * Content addressed, reference counted store of message contents shared
+ * by all mailboxes. Identical contents, e.g. of a message delivered to
+ * many recipients, are kept only once; the headers of each stored message
+ * stay its own.
+ *
+ * <p>Contents larger than the spill threshold are written to a temporary
+ * file mapped into memory, so they do not occupy the heap. The file is
+ * not kept open, its mapped region is read instead. The file is deleted
+ * once the last message referencing it has been released.
+ */
+final class ContentStore {
+
+    static final ContentStore SHARED = new ContentStore();
+
+    static final class Entry {
+
+        private final ByteBuffer key;
+        private final long length;
+        private final InputStream stream;
+        private final Path file;
+        private int references;
+
+        private Entry(ByteBuffer key, long length, InputStream stream, Path file) {
+            this.key = key;
+            this.length = length;
+            this.stream = stream;
+            this.file = file;
+        }
+
+        /**
+         * @return the content as a {@link jakarta.mail.internet.SharedInputStream},
+         *         which must not be read directly, only its substreams
+         */
+        InputStream stream() {
+            return stream;
+        }
+
+        boolean isSpilled() {
+            return file != null;
+        }
+
+        private void delete() {
+            if (file == null) {
+                return;
+            }
+            try {
+                // the mapped region stays readable, e.g. by messages still
+                // referencing the content after a clear
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // the file is gone once the JVM exits anyway, some
+                // platforms do not delete files which are still mapped
+                file.toFile().deleteOnExit();
+            }
+        }
+
+    }
+
+    private final Map<ByteBuffer, Entry> entries = new HashMap<>();
+    private long sizeInBytes;
+    private volatile long spillThreshold = Long.MAX_VALUE;
+
+    /**
+     * @return the entry holding the given content, which is added unless
+     *         the store already contains an identical one; the entry must
+     *         be released once it is no longer used; the given range of
+     *         the bytes is kept without copying it and must not be modified
+     */
+    Entry acquire(byte[] bytes, int offset, int length) throws IOException {
+        ByteBuffer key = ByteBuffer.wrap(digest(bytes, offset, length));
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                entry.references++;
+                return entry;
+            }
+        }
+
+        // write spilled contents without holding the lock
+        Entry created = create(key, bytes, offset, length);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entry = created;
+                entries.put(key, entry);
+                sizeInBytes += entry.length;
+            } else {
+                created.delete();
+            }
+            entry.references++;
+            return entry;
+        }
+    }
+
+    private Entry create(ByteBuffer key, byte[] bytes, int offset, int length)
+        throws IOException
+    {
+        if (length <= spillThreshold) {
+            return new Entry(key, length, new SharedByteArrayInputStream(bytes, offset, length), null);
+        }
+
+        Path file = Files.createTempFile("mock-javamail-", ".content");
+        try {
+            MappedByteBuffer region;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                StandardOpenOption.WRITE))
+            {
+                ByteBuffer content = ByteBuffer.wrap(bytes, offset, length);
+                while (content.hasRemaining()) {
+                    channel.write(content);
+                }
+                region = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            }
+            return new Entry(key, length, new SharedByteBufferInputStream(region), file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    void release(Entry entry) {
+        synchronized (this) {
+            if (--entry.references > 0 || !entries.remove(entry.key, entry)) {
+                return;
+            }
+            sizeInBytes -= entry.length;
+        }
+        entry.delete();
+    }
+
+    /**
+     * Forgets all entries and deletes all spilled files. The contents stay
+     * readable by the messages still referencing them, spilled contents
+     * through their mapped regions.
+     */
+    void clear() {
+        List<Entry> cleared;
+        synchronized (this) {
+            cleared = new ArrayList<>(entries.values());
+            entries.clear();
+            sizeInBytes = 0;
+        }
+        for (Entry entry : cleared) {
+            entry.delete();
+        }
+    }
+
+    /**
+     * Sets the size above which contents are spilled to temporary files,
+     * {@link Long#MAX_VALUE} keeps all contents on the heap.
+     */
+    void setSpillThreshold(long spillThreshold) {
+        if (spillThreshold < 0) {
+            throw new IllegalArgumentException("spill threshold must not be negative: " + spillThreshold);
+        }
+        this.spillThreshold = spillThreshold;
+    }
+
+    long getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    /**
+     * @return the number of distinct contents in this store
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the size of all distinct contents in this store
+     */
+    synchronized long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * @return the number of distinct contents spilled to temporary files
+     */
+    synchronized int getSpilledCount() {
+        int count = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.isSpilled()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static byte[] digest(byte[] bytes, int offset, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(bytes, offset, length);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Delivers the events of a {@link MockMailbox} to the listeners of its
+ * folders in the order they were dispatched. Folders dispatch while holding
+ * their lock, which only queues the event; the listeners are called by a
+ * single daemon thread, which is started on demand and stops after being
+ * idle for a while.
+ */
+final class EventDispatcher implements Runnable {
+
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String name;
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+    private long dispatched;
+    private long delivered;
+    private Thread thread;
+
+    EventDispatcher(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Queues the given event for the given listeners. An exception thrown
+     * by a listener is passed to the uncaught exception handler of the
+     * dispatcher thread and does not affect the other listeners.
+     */
+    <L> void dispatch(L[] listeners, Consumer<? super L> event) {
+        if (listeners.length == 0) {
+            return;
+        }
+        dispatch(() -> {
+            for (L listener : listeners) {
+                try {
+                    event.accept(listener);
+                } catch (RuntimeException | Error e) {
+                    Thread current = Thread.currentThread();
+                    current.getUncaughtExceptionHandler().uncaughtException(current, e);
+                }
+            }
+        });
+    }
+
+    private synchronized void dispatch(Runnable event) {
+        queue.add(event);
+        dispatched++;
+        if (thread == null) {
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until all events dispatched before this call have been
+     * delivered. Returns immediately when called by a listener.
+     */
+    synchronized void await() {
+        if (Thread.currentThread() == thread) {
+            return;
+        }
+
+        long target = dispatched;
+        boolean interrupted = false;
+        while (delivered < target) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        Runnable event;
+        while ((event = take()) != null) {
+            try {
+                event.run();
+            } finally {
+                synchronized (this) {
+                    delivered++;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the next event or {@code null} if the dispatcher was idle for
+     *         too long, in which case the thread has to terminate
+     */
+    private synchronized Runnable take() {
+        long deadline = System.nanoTime() + IDLE_TIMEOUT_NANOS;
+        while (queue.isEmpty()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                thread = null;
+                return null;
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            } catch (InterruptedException e) {
+                // terminate unless an event is already queued
+                deadline = System.nanoTime();
+            }
+        }
+        return queue.poll();
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Enumeration;
+
+import jakarta.activation.DataHandler;
+import jakarta.mail.Flags;
+import jakarta.mail.Flags.Flag;
+import jakarta.mail.Folder;
+import jakarta.mail.Header;
+import jakarta.mail.MessageRemovedException;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Multipart;
+import jakarta.mail.internet.MimeMessage;
+
+/**
+ * Stands in for a message of a fixed message list, like the maildrop of a
+ * POP3 session, which has been expunged by another client. Its message
+ * number and UID stay valid, all other accesses throw a
+ * {@link MessageRemovedException}.
+ */
+final class ExpungedMessage extends MimeMessage {
+
+    private final long uid;
+
+    ExpungedMessage(Folder folder, int msgnum, long uid) {
+        super(folder, msgnum);
+        this.uid = uid;
+        setExpunged(true);
+    }
+
+    long getUid() {
+        return uid;
+    }
+
+    private MessageRemovedException removed() {
+        return new MessageRemovedException("message " + getMessageNumber()
+            + " (UID " + uid + ") has been expunged");
+    }
+
+    @Override
+    public void addHeader(String name, String value) throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public void addHeaderLine(String line) throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public Enumeration<String> getAllHeaderLines() throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public Enumeration<Header> getAllHeaders() throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public Object getContent() throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    protected InputStream getContentStream() throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public synchronized DataHandler getDataHandler() throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public synchronized Flags getFlags() throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public String[] getHeader(String name) throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public String getHeader(String name, String delimiter) throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public InputStream getInputStream() throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public int getLineCount() throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public Enumeration<String> getMatchingHeaderLines(String[] names)
+        throws MessagingException
+    {
+        throw removed();
+    }
+
+    @Override
+    public Enumeration<Header> getMatchingHeaders(String[] names)
+        throws MessagingException
+    {
+        throw removed();
+    }
+
+    @Override
+    public Enumeration<String> getNonMatchingHeaderLines(String[] names)
+        throws MessagingException
+    {
+        throw removed();
+    }
+
+    @Override
+    public Enumeration<Header> getNonMatchingHeaders(String[] names)
+        throws MessagingException
+    {
+        throw removed();
+    }
+
+    @Override
+    public InputStream getRawInputStream() throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public Date getReceivedDate() throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public int getSize() throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public synchronized boolean isSet(Flag flag) throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public void removeHeader(String name) throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public void saveChanges() throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public void setContent(Multipart mp) throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public void setContent(Object o, String type) throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public synchronized void setDataHandler(DataHandler dh) throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public synchronized void setFlags(Flags flag, boolean set) throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public void setHeader(String name, String value) throws MessagingException {
+        throw removed();
+    }
+
+    @Override
+    public void writeTo(OutputStream os, String[] ignoreList) throws MessagingException {
+        throw removed();
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+/**
+ * Statistics of the message items loaded through a protocol folder, either
+ * in batches by {@link jakarta.mail.Folder#fetch} or lazily on first
+ * access. Each lazy load corresponds to a round trip to a real server, so
+ * clients using suitable fetch profiles cause few of them.
+ */
+public final class FetchStats {
+
+    private final long fetchCount;
+    private final long fetchedMessages;
+    private final long lazyLoads;
+    private final long lazyContentLoads;
+
+    FetchStats(long fetchCount, long fetchedMessages, long lazyLoads,
+        long lazyContentLoads)
+    {
+        this.fetchCount = fetchCount;
+        this.fetchedMessages = fetchedMessages;
+        this.lazyLoads = lazyLoads;
+        this.lazyContentLoads = lazyContentLoads;
+    }
+
+    /**
+     * @return the number of calls to {@link jakarta.mail.Folder#fetch}
+     */
+    public long getFetchCount() {
+        return fetchCount;
+    }
+
+    /**
+     * @return the total number of messages passed to
+     *         {@link jakarta.mail.Folder#fetch}
+     */
+    public long getFetchedMessageCount() {
+        return fetchedMessages;
+    }
+
+    /**
+     * @return the number of items, i.e. the envelope, the content info,
+     *         the flags, the size, single headers, all headers or the
+     *         content, loaded on first access instead of being fetched
+     */
+    public long getLazyLoadCount() {
+        return lazyLoads;
+    }
+
+    /**
+     * @return the number of message contents loaded on first access
+     */
+    public long getLazyContentLoadCount() {
+        return lazyContentLoads;
+    }
+
+    @Override
+    public String toString() {
+        return "FetchStats[fetches=" + fetchCount
+            + ", fetchedMessages=" + fetchedMessages
+            + ", lazyLoads=" + lazyLoads
+            + ", lazyContentLoads=" + lazyContentLoads + ']';
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import jakarta.mail.FetchProfile;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+
+import com.sun.mail.imap.IMAPFolder;
+
+/**
+ * Tracks the items loaded by the message views of a protocol folder. Views
+ * start out with nothing loaded; {@link #fetch(Message[], FetchProfile)}
+ * loads the requested items of many messages at once, every other item is
+ * loaded on first access and counted as a lazy load.
+ */
+final class FetchTracker {
+
+    static final int ENVELOPE = 1;
+    static final int CONTENT_INFO = 1 << 1;
+    static final int FLAGS = 1 << 2;
+    static final int SIZE = 1 << 3;
+    static final int HEADERS = 1 << 4;
+    static final int CONTENT = 1 << 5;
+
+    private static final Set<String> ENVELOPE_HEADERS = names("From", "Sender",
+        "Reply-To", "To", "Cc", "Bcc", "Subject", "Date", "Message-ID",
+        "In-Reply-To");
+    private static final Set<String> CONTENT_INFO_HEADERS = names(
+        "Content-Type", "Content-Transfer-Encoding", "Content-Disposition",
+        "Content-Description", "Content-ID", "Content-MD5", "Content-Language");
+
+    private long fetchCount;
+    private long fetchedMessages;
+    private long lazyLoads;
+    private long lazyContentLoads;
+
+    private static Set<String> names(String... names) {
+        Set<String> result = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        for (String name : names) {
+            result.add(name);
+        }
+        return result;
+    }
+
+    /**
+     * @return the item containing the given header, {@link #HEADERS} if it
+     *         is neither part of the envelope nor of the content info
+     */
+    static int itemOf(String header) {
+        if (ENVELOPE_HEADERS.contains(header)) {
+            return ENVELOPE;
+        }
+        return CONTENT_INFO_HEADERS.contains(header) ? CONTENT_INFO : HEADERS;
+    }
+
+    static String key(String header) {
+        return header.toLowerCase(Locale.ROOT);
+    }
+
+    private static int itemsOf(FetchProfile fp) {
+        int items = 0;
+        for (FetchProfile.Item item : fp.getItems()) {
+            if (item == FetchProfile.Item.ENVELOPE) {
+                items |= ENVELOPE;
+            } else if (item == FetchProfile.Item.CONTENT_INFO) {
+                items |= CONTENT_INFO;
+            } else if (item == FetchProfile.Item.FLAGS) {
+                items |= FLAGS;
+            } else if (item == FetchProfile.Item.SIZE) {
+                items |= SIZE;
+            } else if (item == IMAPFolder.FetchProfileItem.HEADERS) {
+                items |= ENVELOPE | CONTENT_INFO | HEADERS;
+            } else if (item == IMAPFolder.FetchProfileItem.MESSAGE) {
+                items |= ENVELOPE | CONTENT_INFO | HEADERS | SIZE | CONTENT;
+            }
+            // UIDs and all other items are always known
+        }
+        return items;
+    }
+
+    /**
+     * Loads the items of the given profile of all messages viewed through
+     * the folder of this tracker, other messages are ignored.
+     */
+    void fetch(Message[] msgs, FetchProfile fp) throws MessagingException {
+        int items = itemsOf(fp);
+        String[] headers = fp.getHeaderNames();
+        int fetched = 0;
+        for (Message m : msgs) {
+            if (m instanceof MockMessage && ((MockMessage) m).fetch(this, items, headers)) {
+                fetched++;
+            }
+        }
+
+        synchronized (this) {
+            fetchCount++;
+            fetchedMessages += fetched;
+        }
+    }
+
+    synchronized void lazyLoad(int item) {
+        lazyLoads++;
+        if (item == CONTENT) {
+            lazyContentLoads++;
+        }
+    }
+
+    synchronized FetchStats getStats() {
+        return new FetchStats(fetchCount, fetchedMessages, lazyLoads, lazyContentLoads);
+    }
+
+}
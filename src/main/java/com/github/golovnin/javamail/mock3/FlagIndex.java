@@ -0,0 +1,141 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import java.util.BitSet;
+import jakarta.mail.Flags;
+import jakarta.mail.Flags.Flag;
+
+/**
+ * Per folder counters and bitmaps of the system flags. The bitmaps are
+ * indexed by the position of a message in the {@link MessageStore}.
+ */
+final class FlagIndex {
+
+    private static final Flag[] SYSTEM_FLAGS = {
+        Flag.ANSWERED, Flag.DELETED, Flag.DRAFT,
+        Flag.FLAGGED, Flag.RECENT, Flag.SEEN
+    };
+
+    private final BitSet[] positions = new BitSet[SYSTEM_FLAGS.length];
+    private final int[] counts = new int[SYSTEM_FLAGS.length];
+
+    FlagIndex() {
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = new BitSet();
+        }
+    }
+
+    static int bitsOf(Flags flags) {
+        int bits = 0;
+        for (int i = 0; i < SYSTEM_FLAGS.length; i++) {
+            if (flags.contains(SYSTEM_FLAGS[i])) {
+                bits |= 1 << i;
+            }
+        }
+        return bits;
+    }
+
+    static int bitOf(Flag flag) {
+        for (int i = 0; i < SYSTEM_FLAGS.length; i++) {
+            if (SYSTEM_FLAGS[i] == flag) {
+                return 1 << i;
+            }
+        }
+        throw new IllegalArgumentException("not an indexed flag: " + flag);
+    }
+
+    /**
+     * @return {@code true} if the given flags consist of system flags only
+     *         and can be answered from the bitmaps
+     */
+    static boolean isIndexed(Flags flags) {
+        return flags.getUserFlags().length == 0 && !flags.contains(Flag.USER);
+    }
+
+    void update(int index, int oldBits, int newBits) {
+        int changed = oldBits ^ newBits;
+        for (int i = 0; i < SYSTEM_FLAGS.length; i++) {
+            int bit = 1 << i;
+            if ((changed & bit) != 0) {
+                boolean set = (newBits & bit) != 0;
+                positions[i].set(index, set);
+                counts[i] += set ? 1 : -1;
+            }
+        }
+    }
+
+    /**
+     * @return the position of the given system flag in {@link #counts()}
+     */
+    static int ordinalOf(Flag flag) {
+        return Integer.numberOfTrailingZeros(bitOf(flag));
+    }
+
+    int count(Flag flag) {
+        return counts[ordinalOf(flag)];
+    }
+
+    int[] counts() {
+        return counts.clone();
+    }
+
+    /**
+     * @return the positions of all messages having all of the given flags
+     */
+    BitSet matching(int bits, int size) {
+        BitSet result = new BitSet(size);
+        result.set(0, size);
+        for (int i = 0; i < SYSTEM_FLAGS.length; i++) {
+            if ((bits & (1 << i)) != 0) {
+                result.and(positions[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the positions of all messages having at least one of the
+     *         given flags
+     */
+    BitSet matchingAny(int bits, int size) {
+        BitSet result = new BitSet(size);
+        for (int i = 0; i < SYSTEM_FLAGS.length; i++) {
+            if ((bits & (1 << i)) != 0) {
+                result.or(positions[i]);
+            }
+        }
+        return result;
+    }
+
+    void rebuild(MessageStore store) {
+        for (int i = 0; i < positions.length; i++) {
+            positions[i].clear();
+            counts[i] = 0;
+        }
+
+        for (int i = 0; i < store.size(); i++) {
+            update(i, 0, store.flagsAt(i));
+        }
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import jakarta.mail.Flags.Flag;
+import jakarta.mail.Message;
+
+/**
+ * Immutable point-in-time view of the messages and counters of a
+ * {@link MailboxFolder}. The folder publishes a new snapshot after each
+ * mutation, readers use it without taking any lock and see a consistent
+ * state no matter how long they keep it.
+ *
+ * <p>Snapshots share the message arrays of the folder, so publishing one is
+ * cheap. Note that the flags of the messages themselves are not part of the
+ * snapshot, only the flag counters are.
+ */
+public final class FolderSnapshot {
+
+    private final long[] uids;
+    private final MockMessage[] messages;
+    private final int size;
+    private final int[] flagCounts;
+    private final long sizeInBytes;
+    private final long highestModSeq;
+    private final long uidValidity;
+
+    FolderSnapshot(long[] uids, MockMessage[] messages, int size,
+        int[] flagCounts, long sizeInBytes, long highestModSeq,
+        long uidValidity)
+    {
+        this.uids = uids;
+        this.messages = messages;
+        this.size = size;
+        this.flagCounts = flagCounts;
+        this.sizeInBytes = sizeInBytes;
+        this.highestModSeq = highestModSeq;
+        this.uidValidity = uidValidity;
+    }
+
+    public int getMessageCount() {
+        return size;
+    }
+
+    /**
+     * @return the number of messages which had ({@code set == true}) or
+     *         did not have ({@code set == false}) the given system flag
+     */
+    public int getMessageCount(Flag flag, boolean set) {
+        int count = flagCounts[FlagIndex.ordinalOf(flag)];
+        return set ? count : size - count;
+    }
+
+    public long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    public long getHighestModSeq() {
+        return highestModSeq;
+    }
+
+    public long getUidValidity() {
+        return uidValidity;
+    }
+
+    /**
+     * @return an unmodifiable list of the messages in UID order
+     */
+    public List<Message> getMessages() {
+        return new MessageList(0, size);
+    }
+
+    /**
+     * @return the message with the given UID or {@code null}
+     */
+    public Message getById(long uid) {
+        int index = indexOf(uid);
+        return index < 0 ? null : messages[index];
+    }
+
+    public Message getByMsgNum(int msgnum) {
+        checkIndex(msgnum - 1);
+        return messages[msgnum - 1];
+    }
+
+    long uidAt(int index) {
+        checkIndex(index);
+        return uids[index];
+    }
+
+    int indexOf(long uid) {
+        return Arrays.binarySearch(uids, 0, size, uid);
+    }
+
+    int lowerBound(long uid) {
+        int index = indexOf(uid);
+        return index < 0 ? -(index + 1) : index;
+    }
+
+    int upperBound(long uid) {
+        int index = indexOf(uid);
+        return index < 0 ? -(index + 1) : index + 1;
+    }
+
+    /**
+     * @return an unmodifiable list of the messages in the range
+     *         {@code [from, to)}
+     */
+    List<Message> getRange(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException(
+                "range [" + from + ", " + to + ") out of bounds (" + size + ")");
+        }
+        return new MessageList(from, to);
+    }
+
+    /**
+     * @return the messages with the given UIDs in UID order, UIDs of
+     *         messages not in this snapshot are ignored
+     */
+    List<Message> getByUids(UidSet set) {
+        List<Message> result = new ArrayList<>(set.size());
+        int from = 0;
+        for (int i = 0; i < set.size() && from < size; i++) {
+            int index = Arrays.binarySearch(uids, from, size, set.get(i));
+            if (index >= 0) {
+                result.add(messages[index]);
+                from = index + 1;
+            } else {
+                from = -(index + 1);
+            }
+        }
+        return result;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new ArrayIndexOutOfBoundsException(
+                "message number (" + (index + 1) + ") out of bounds (" + size + ")");
+        }
+    }
+
+    private final class MessageList extends AbstractList<Message>
+        implements RandomAccess
+    {
+
+        private final int from;
+        private final int to;
+
+        MessageList(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Message get(int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException(
+                    "index (" + index + ") out of bounds (" + (to - from) + ")");
+            }
+            return messages[from + index];
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+    }
+
+}
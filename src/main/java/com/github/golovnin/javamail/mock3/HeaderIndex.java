@@ -0,0 +1,376 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import jakarta.mail.Address;
+import jakarta.mail.Message;
+import jakarta.mail.Message.RecipientType;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.search.AddressStringTerm;
+import jakarta.mail.search.AddressTerm;
+import jakarta.mail.search.AndTerm;
+import jakarta.mail.search.FromStringTerm;
+import jakarta.mail.search.FromTerm;
+import jakarta.mail.search.HeaderTerm;
+import jakarta.mail.search.MessageIDTerm;
+import jakarta.mail.search.OrTerm;
+import jakarta.mail.search.RecipientStringTerm;
+import jakarta.mail.search.RecipientTerm;
+import jakarta.mail.search.SearchTerm;
+import jakarta.mail.search.StringTerm;
+import jakarta.mail.search.SubjectTerm;
+
+/**
+ * Inverted index over the subject, the from/to/cc/bcc addresses, the
+ * Message-ID and configurable headers of the messages of a folder.
+ *
+ * <p>Substring terms are answered with a trigram index: the candidates of
+ * a pattern are the messages containing all trigrams of the pattern. The
+ * address terms are answered with an index over the normalized addresses.
+ * The index returns candidates only, the search must still match the term
+ * against each candidate.
+ */
+final class HeaderIndex {
+
+    private static final int GRAM = 3;
+
+    private static final String SUBJECT = "subject";
+    private static final String FROM = "from";
+    private static final String TO = "to";
+    private static final String CC = "cc";
+    private static final String BCC = "bcc";
+    private static final String MESSAGE_ID = "message-id";
+    private static final String HEADER_PREFIX = "header:";
+
+    private final Set<String> headerNames;
+    // field -> trigram -> UIDs
+    private final Map<String, Map<String, UidSet>> grams = new HashMap<>();
+    // field -> normalized address -> UIDs
+    private final Map<String, Map<String, UidSet>> addresses = new HashMap<>();
+
+    HeaderIndex(String... headerNames) {
+        Set<String> names = new LinkedHashSet<>();
+        for (String name : headerNames) {
+            names.add(name.toLowerCase(Locale.ROOT));
+        }
+        this.headerNames = Collections.unmodifiableSet(names);
+    }
+
+    Set<String> getHeaderNames() {
+        return headerNames;
+    }
+
+    void add(MockMessage msg) {
+        long uid = msg.getMockid();
+        for (Map.Entry<String, Set<String>> e : gramsOf(msg).entrySet()) {
+            Map<String, UidSet> postings =
+                grams.computeIfAbsent(e.getKey(), k -> new HashMap<>());
+            for (String gram : e.getValue()) {
+                postings.computeIfAbsent(gram, k -> new UidSet()).add(uid);
+            }
+        }
+        for (Map.Entry<String, Set<String>> e : addressesOf(msg).entrySet()) {
+            Map<String, UidSet> postings =
+                addresses.computeIfAbsent(e.getKey(), k -> new HashMap<>());
+            for (String address : e.getValue()) {
+                postings.computeIfAbsent(address, k -> new UidSet()).add(uid);
+            }
+        }
+    }
+
+    void remove(MockMessage msg) {
+        long uid = msg.getMockid();
+        removeAll(grams, gramsOf(msg), uid);
+        removeAll(addresses, addressesOf(msg), uid);
+    }
+
+    private static void removeAll(Map<String, Map<String, UidSet>> index,
+        Map<String, Set<String>> keys, long uid)
+    {
+        for (Map.Entry<String, Set<String>> e : keys.entrySet()) {
+            Map<String, UidSet> postings = index.get(e.getKey());
+            if (postings == null) {
+                continue;
+            }
+            for (String key : e.getValue()) {
+                UidSet uids = postings.get(key);
+                if (uids != null && uids.remove(uid) && uids.isEmpty()) {
+                    postings.remove(key);
+                }
+            }
+        }
+    }
+
+    void clear() {
+        grams.clear();
+        addresses.clear();
+    }
+
+    /**
+     * @return the UIDs of the messages which may match the given term or
+     *         {@code null} if the term cannot be answered by this index
+     */
+    UidSet candidates(SearchTerm term) {
+        if (term instanceof AndTerm) {
+            UidSet result = null;
+            for (SearchTerm t : ((AndTerm) term).getTerms()) {
+                UidSet uids = candidates(t);
+                if (uids != null) {
+                    result = result == null ? uids : result.intersect(uids);
+                }
+            }
+            return result;
+        }
+
+        if (term instanceof OrTerm) {
+            UidSet result = new UidSet();
+            for (SearchTerm t : ((OrTerm) term).getTerms()) {
+                UidSet uids = candidates(t);
+                if (uids == null) {
+                    return null;
+                }
+                result = result.union(uids);
+            }
+            return result;
+        }
+
+        if (term instanceof SubjectTerm) {
+            return gramCandidates(SUBJECT, (StringTerm) term);
+        }
+
+        if (term instanceof MessageIDTerm) {
+            return gramCandidates(MESSAGE_ID, (StringTerm) term);
+        }
+
+        if (term instanceof HeaderTerm) {
+            String name = ((HeaderTerm) term).getHeaderName().toLowerCase(Locale.ROOT);
+            return headerNames.contains(name)
+                 ? gramCandidates(HEADER_PREFIX + name, (StringTerm) term)
+                 : null;
+        }
+
+        if (term instanceof FromStringTerm) {
+            return gramCandidates(FROM, (AddressStringTerm) term);
+        }
+
+        if (term instanceof RecipientStringTerm) {
+            RecipientStringTerm rst = (RecipientStringTerm) term;
+            String field = fieldOf(rst.getRecipientType());
+            return field == null ? null : gramCandidates(field, rst);
+        }
+
+        if (term instanceof FromTerm) {
+            return addressCandidates(FROM, (AddressTerm) term);
+        }
+
+        if (term instanceof RecipientTerm) {
+            RecipientTerm rt = (RecipientTerm) term;
+            String field = fieldOf(rt.getRecipientType());
+            return field == null ? null : addressCandidates(field, rt);
+        }
+
+        return null;
+    }
+
+    private UidSet gramCandidates(String field, StringTerm term) {
+        String pattern = term.getPattern();
+        if (pattern == null || pattern.length() < GRAM) {
+            return null;
+        }
+
+        Map<String, UidSet> postings = grams.get(field);
+        if (postings == null) {
+            return new UidSet();
+        }
+
+        UidSet result = null;
+        for (String gram : gramsOf(pattern)) {
+            UidSet uids = postings.get(gram);
+            if (uids == null) {
+                return new UidSet();
+            }
+            result = result == null ? uids.copy() : result.intersect(uids);
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private UidSet addressCandidates(String field, AddressTerm term) {
+        String key = normalize(term.getAddress());
+        if (key == null) {
+            return null;
+        }
+
+        Map<String, UidSet> postings = addresses.get(field);
+        UidSet uids = postings == null ? null : postings.get(key);
+        return uids == null ? new UidSet() : uids.copy();
+    }
+
+    // The search terms treat unparsable headers as a mismatch, so such
+    // headers are simply not indexed.
+    private Map<String, Set<String>> gramsOf(Message msg) {
+        Map<String, Set<String>> result = new HashMap<>();
+        try {
+            addGrams(result, SUBJECT, msg.getSubject());
+        } catch (MessagingException e) {
+            // ignore
+        }
+        addGrams(result, MESSAGE_ID, header(msg, "Message-ID"));
+        for (String name : headerNames) {
+            addGrams(result, HEADER_PREFIX + name, header(msg, name));
+        }
+
+        addAddressGrams(result, FROM, from(msg));
+        addAddressGrams(result, TO, recipients(msg, RecipientType.TO));
+        addAddressGrams(result, CC, recipients(msg, RecipientType.CC));
+        addAddressGrams(result, BCC, recipients(msg, RecipientType.BCC));
+        return result;
+    }
+
+    private static Map<String, Set<String>> addressesOf(Message msg) {
+        Map<String, Set<String>> result = new HashMap<>();
+        addAddresses(result, FROM, from(msg));
+        addAddresses(result, TO, recipients(msg, RecipientType.TO));
+        addAddresses(result, CC, recipients(msg, RecipientType.CC));
+        addAddresses(result, BCC, recipients(msg, RecipientType.BCC));
+        return result;
+    }
+
+    private static String[] header(Message msg, String name) {
+        try {
+            return msg.getHeader(name);
+        } catch (MessagingException e) {
+            return null;
+        }
+    }
+
+    private static Address[] from(Message msg) {
+        try {
+            return msg.getFrom();
+        } catch (MessagingException e) {
+            return null;
+        }
+    }
+
+    private static Address[] recipients(Message msg, RecipientType type) {
+        try {
+            return msg.getRecipients(type);
+        } catch (MessagingException e) {
+            return null;
+        }
+    }
+
+    private static void addGrams(Map<String, Set<String>> result, String field,
+        String... values)
+    {
+        if (values == null) {
+            return;
+        }
+        for (String value : values) {
+            if (value != null) {
+                result.computeIfAbsent(field, k -> new HashSet<>())
+                    .addAll(gramsOf(value));
+            }
+        }
+    }
+
+    private static void addAddressGrams(Map<String, Set<String>> result,
+        String field, Address[] values)
+    {
+        if (values == null) {
+            return;
+        }
+        for (Address address : values) {
+            // see AddressStringTerm.match(Address)
+            addGrams(result, field, address instanceof InternetAddress
+                ? ((InternetAddress) address).toUnicodeString()
+                : address.toString());
+        }
+    }
+
+    private static void addAddresses(Map<String, Set<String>> result,
+        String field, Address[] values)
+    {
+        if (values == null) {
+            return;
+        }
+        for (Address address : values) {
+            String key = normalize(address);
+            if (key != null) {
+                result.computeIfAbsent(field, k -> new HashSet<>()).add(key);
+            }
+        }
+    }
+
+    private static Set<String> gramsOf(String value) {
+        Set<String> result = new HashSet<>();
+        char[] chars = fold(value);
+        for (int i = 0; i + GRAM <= chars.length; i++) {
+            result.add(new String(chars, i, GRAM));
+        }
+        return result;
+    }
+
+    // folds the case per character like String.regionMatches(true, ...)
+    // does, so the trigrams of a pattern and a value match if the pattern
+    // is a case-insensitive substring of the value
+    private static char[] fold(String value) {
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return chars;
+    }
+
+    // InternetAddress.equals compares the addresses ignoring the case
+    private static String normalize(Address address) {
+        if (!(address instanceof InternetAddress)) {
+            return null;
+        }
+        String value = ((InternetAddress) address).getAddress();
+        return value == null ? null : new String(fold(value));
+    }
+
+    private static String fieldOf(RecipientType type) {
+        if (type == RecipientType.TO) {
+            return TO;
+        }
+        if (type == RecipientType.CC) {
+            return CC;
+        }
+        if (type == RecipientType.BCC) {
+            return BCC;
+        }
+        return null;
+    }
+
+}
@@ -34,8 +34,10 @@ import jakarta.mail.Folder;
 import jakarta.mail.FolderClosedException;
 import jakarta.mail.FolderNotFoundException;
 import jakarta.mail.Message;
+import jakarta.mail.MessageRemovedException;
 import jakarta.mail.MessagingException;
 import jakarta.mail.Quota;
+import jakarta.mail.UIDFolder;
 import jakarta.mail.event.ConnectionEvent;
 import jakarta.mail.event.FolderEvent;
 import jakarta.mail.event.MailEvent;
@@ -47,8 +49,11 @@ import com.sun.mail.iap.ProtocolException;
 import com.sun.mail.iap.Response;
 import com.sun.mail.imap.AppendUID;
 import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.MessageVanishedEvent;
 import com.sun.mail.imap.ResyncData;
+import com.sun.mail.imap.ResyncData0;
 import com.sun.mail.imap.SortTerm;
+import com.sun.mail.imap.protocol.UIDSet;
 
 import static com.github.golovnin.javamail.mock3.MockMailbox.isInbox;
 
@@ -64,6 +69,8 @@ public class IMAPMockFolder extends IMAPFolder implements
     private final IMAPMockStore store;
     private final UUID objectId = UUID.randomUUID();
     private final Semaphore idleLock = new Semaphore(0, true);
+    private final SessionSequence sequence = new SessionSequence();
+    private final FetchTracker fetchTracker = new FetchTracker();
 
     private int idleState = RUNNING;
     private volatile boolean opened = false;
@@ -76,10 +83,19 @@ public class IMAPMockFolder extends IMAPFolder implements
         this.store = store;
     }
 
-    private synchronized void abortIdle() {
-        if (idleState == IDLE) {
-            idleState = ABORTING;
-            idleLock.release();
+    private void abortIdle() {
+        // like the untagged responses of a server, the events of the
+        // mailbox are delivered before the next command; they are awaited
+        // before the lock of this folder is taken, because listeners may
+        // need it, nested calls have awaited them already
+        if (!Thread.holdsLock(this)) {
+            mailboxFolder.getMailbox().awaitEvents();
+        }
+        synchronized (this) {
+            if (idleState == IDLE) {
+                idleState = ABORTING;
+                idleLock.release();
+            }
         }
     }
 
@@ -89,24 +105,35 @@ public class IMAPMockFolder extends IMAPFolder implements
         checkExists();
         // checkOpened();
         // checkWriteMode();
-        for (Message m : msgs) {
-            mailboxFolder.add((MimeMessage) m);
-        }
+        mailboxFolder.addAll(mimeMessages(msgs));
     }
 
     @Override
-    public synchronized AppendUID[] appendUIDMessages(Message[] msgs) throws MessagingException {
+    public AppendUID[] appendUIDMessages(Message[] msgs) throws MessagingException {
         abortIdle();
-        checkExists();
-        // checkOpened();
-        // checkWriteMode();
-        AppendUID[] uids = new AppendUID[msgs.length];
-        for (int i = 0; i < msgs.length; i++) {
-            MockMessage mockMessage = (MockMessage) mailboxFolder.add((MimeMessage) msgs[i]);
-            uids[i] = new AppendUID(mailboxFolder.getUidValidity(), mockMessage.getMockid());
+        synchronized (this) {
+            checkExists();
+            // checkOpened();
+            // checkWriteMode();
+            List<MockMessage> added = mailboxFolder.addAll(mimeMessages(msgs));
+            long uidValidity = mailboxFolder.getUidValidity();
+            AppendUID[] uids = new AppendUID[msgs.length];
+            for (int i = 0; i < msgs.length; i++) {
+                uids[i] = new AppendUID(uidValidity, added.get(i).getMockid());
+            }
+
+            return uids;
         }
+    }
 
-        return uids;
+    private static List<MimeMessage> mimeMessages(Message[] msgs) {
+        List<MimeMessage> result = new ArrayList<>(msgs.length);
+        for (Message m : msgs) {
+            // copy views of mock folders server side, i.e. without loading
+            // their items
+            result.add(m instanceof MockMessage ? ((MockMessage) m).stored() : (MimeMessage) m);
+        }
+        return result;
     }
 
     @Override
@@ -142,30 +169,36 @@ public class IMAPMockFolder extends IMAPFolder implements
     }
 
     @Override
-    public synchronized void close(boolean expunge) throws MessagingException {
+    public void close(boolean expunge) throws MessagingException {
         abortIdle();
-        checkOpened();
-        checkExists();
+        synchronized (this) {
+            checkOpened();
+            checkExists();
 
-        if (expunge) {
-            expunge();
-        }
+            if (expunge) {
+                expunge();
+            }
 
-        opened = false;
-        notifyConnectionListeners(ConnectionEvent.CLOSED);
+            opened = false;
+            sequence.clear();
+            notifyConnectionListeners(ConnectionEvent.CLOSED);
+        }
     }
 
     @Override
-    public synchronized void copyMessages(Message[] msgs, Folder folder)
+    public void copyMessages(Message[] msgs, Folder folder)
         throws MessagingException
     {
         abortIdle();
-        checkOpened();
-        checkExists();
+        synchronized (this) {
+            checkOpened();
+            checkExists();
+        }
         if (msgs == null || folder == null || msgs.length == 0) {
             return;
         }
 
+        // the target folder is accessed without holding the lock of this one
         if (!folder.exists()) {
             throw new FolderNotFoundException(folder.getFullName()
                 + " does not exist", folder);
@@ -175,46 +208,57 @@ public class IMAPMockFolder extends IMAPFolder implements
     }
 
     @Override
-    public synchronized AppendUID[] copyUIDMessages(Message[] msgs,
+    public AppendUID[] copyUIDMessages(Message[] msgs,
         Folder folder) throws MessagingException
     {
         abortIdle();
-        checkExists();
-        checkOpened();
+        synchronized (this) {
+            checkExists();
+            checkOpened();
+        }
         if (msgs == null || folder == null || msgs.length == 0) {
             return null;
         }
 
-        AppendUID[] uids = new AppendUID[msgs.length];
-
-        for (int i = 0; i < msgs.length; i++) {
-            MockMessage mockMessage = (MockMessage) mailboxFolder.add((MimeMessage) msgs[i]);
-            uids[i] = new AppendUID(mailboxFolder.getUidValidity(), mockMessage.getMockid());
+        if (!(folder instanceof IMAPFolder)) {
+            throw new IllegalArgumentException(
+                "folder must be of type IMAPFolder");
+        }
+        // the target folder is accessed without holding the lock of this one
+        if (!folder.exists()) {
+            throw new FolderNotFoundException(folder.getFullName()
+                + " does not exist", folder);
         }
 
-        return uids;
+        // the copies are appended to the target folder, which assigns
+        // their UIDs (COPYUID, RFC 4315)
+        return ((IMAPFolder) folder).appendUIDMessages(msgs);
     }
 
     @Override
-    public synchronized boolean create(int type) throws MessagingException {
+    public boolean create(int type) throws MessagingException {
         abortIdle();
-        if (exists()) {
-            return true;
-        }
+        synchronized (this) {
+            if (exists()) {
+                return true;
+            }
 
-        mailboxFolder.create();
-        notifyFolderListeners(FolderEvent.CREATED);
-        return mailboxFolder.isExists();
+            mailboxFolder.create();
+            notifyFolderListeners(FolderEvent.CREATED);
+            return mailboxFolder.isExists();
+        }
     }
 
     @Override
-    public synchronized boolean delete(boolean recurse) throws MessagingException {
+    public boolean delete(boolean recurse) throws MessagingException {
         abortIdle();
-        checkExists();
-        checkClosed();
-        mailboxFolder.deleteFolder(recurse);
-        notifyFolderListeners(FolderEvent.DELETED);
-        return true;
+        synchronized (this) {
+            checkExists();
+            checkClosed();
+            mailboxFolder.deleteFolder(recurse);
+            notifyFolderListeners(FolderEvent.DELETED);
+            return true;
+        }
     }
 
     @Override
@@ -250,50 +294,66 @@ public class IMAPMockFolder extends IMAPFolder implements
     }
 
     @Override
-    public synchronized boolean exists() throws MessagingException {
+    public boolean exists() throws MessagingException {
         abortIdle();
-        return mailboxFolder.isExists();
+        synchronized (this) {
+            return mailboxFolder.isExists();
+        }
     }
 
     @Override
-    public synchronized Message[] expunge() throws MessagingException {
+    public Message[] expunge() throws MessagingException {
         abortIdle();
-        checkExists();
-        checkOpened();
-        checkWriteMode();
+        synchronized (this) {
+            checkExists();
+            checkOpened();
+            checkWriteMode();
 
-        Message[] removed = wrap(mailboxFolder.expunge());
+            Message[] removed = wrap(mailboxFolder.expunge());
 
-        if (removed.length > 0) {
-            notifyMessageRemovedListeners(true, removed);
-        }
+            if (removed.length > 0) {
+                notifyMessageRemovedListeners(true, removed);
+            }
 
-        return removed;
+            return removed;
+        }
     }
 
     @Override
-    public synchronized Message[] expunge(Message[] msgs)
+    public Message[] expunge(Message[] msgs)
         throws MessagingException
     {
         abortIdle();
-        checkExists();
-        checkOpened();
-        checkWriteMode();
-        Message[] removed = wrap(mailboxFolder.expunge(msgs));
+        synchronized (this) {
+            checkExists();
+            checkOpened();
+            checkWriteMode();
+            Message[] removed = wrap(mailboxFolder.expunge(msgs));
 
-        if (removed.length > 0) {
-            notifyMessageRemovedListeners(true, removed);
-        }
+            if (removed.length > 0) {
+                notifyMessageRemovedListeners(true, removed);
+            }
 
-        return removed;
+            return removed;
+        }
     }
 
     @Override
-    public synchronized void fetch(Message[] msgs, FetchProfile fp)
+    public void fetch(Message[] msgs, FetchProfile fp)
         throws MessagingException
     {
         abortIdle();
-        // do nothing more
+        synchronized (this) {
+            fetchTracker.fetch(msgs, fp);
+        }
+    }
+
+    /**
+     * @return the statistics of the message items loaded through this
+     *         folder
+     */
+    public FetchStats getFetchStats() {
+        return fetchTracker.getStats();
     }
 
     @Override
@@ -312,37 +372,41 @@ public class IMAPMockFolder extends IMAPFolder implements
     }
 
     @Override
-    public synchronized void forceClose() throws MessagingException {
+    public void forceClose() throws MessagingException {
         close(false);
     }
 
     @Override
-    public synchronized String[] getAttributes() throws MessagingException {
+    public String[] getAttributes() throws MessagingException {
         checkExists();
         return new String[0];
     }
 
     @Override
-    public synchronized int getDeletedMessageCount() throws MessagingException {
+    public int getDeletedMessageCount() throws MessagingException {
         abortIdle();
-        checkExists();
-        if (!opened) {
-            return -1;
-        }
+        synchronized (this) {
+            checkExists();
+            if (!opened) {
+                return -1;
+            }
 
-        return mailboxFolder.getByFlags(new Flags(Flags.Flag.DELETED), false).size();
+            return mailboxFolder.getMessageCount(Flag.DELETED, true);
+        }
     }
 
     @Override
-    public synchronized Folder getFolder(String name) throws MessagingException {
+    public Folder getFolder(String name) throws MessagingException {
         abortIdle();
-        // checkExists();
+        synchronized (this) {
+            // checkExists();
 
-        if (isInbox(name)) {
-            return new IMAPMockFolder(store, mailboxFolder.getMailbox().getInbox());
-        }
+            if (isInbox(name)) {
+                return new IMAPMockFolder(store, mailboxFolder.getMailbox().getInbox());
+            }
 
-        return new IMAPMockFolder(store, mailboxFolder.getOrAddSubFolder(name));
+            return new IMAPMockFolder(store, mailboxFolder.getOrAddSubFolder(name));
+        }
     }
 
     @Override
@@ -352,82 +416,118 @@ public class IMAPMockFolder extends IMAPFolder implements
 
     @Override
     public long getHighestModSeq() throws MessagingException {
-        throw new MessagingException("CONDSTORE not supported");
+        abortIdle();
+        synchronized (this) {
+            checkExists();
+            checkOpened();
+            return mailboxFolder.getHighestModSeq();
+        }
     }
 
     @Override
-    public synchronized Message getMessage(int msgnum) throws MessagingException {
+    public Message getMessage(int msgnum) throws MessagingException {
         abortIdle();
-        checkExists();
-        checkOpened();
-        return new MockMessage(mailboxFolder.getByMsgNum(msgnum), this);
+        synchronized (this) {
+            checkExists();
+            checkOpened();
+            long uid = sequence.uidAt(msgnum);
+            Message message = mailboxFolder.getById(uid);
+            if (message == null) {
+                throw new MessageRemovedException("message " + msgnum
+                    + " (UID " + uid + ") has been expunged");
+            }
+            return new MockMessage(message, this, msgnum, fetchTracker);
+        }
     }
 
     @Override
-    public synchronized Message getMessageByUID(long uid)
+    public Message getMessageByUID(long uid)
         throws MessagingException
     {
         abortIdle();
-        checkExists();
-        checkOpened();
-        Message message = mailboxFolder.getById(uid);
-        return message != null ? new MockMessage(message, this) : null;
+        synchronized (this) {
+            checkExists();
+            checkOpened();
+            Message message = mailboxFolder.getById(uid);
+            return message != null ? wrap(message) : null;
+        }
     }
 
     @Override
-    public synchronized int getMessageCount() throws MessagingException {
+    public int getMessageCount() throws MessagingException {
         abortIdle();
-        checkExists();
-        return mailboxFolder.getMessageCount();
+        synchronized (this) {
+            checkExists();
+            return opened ? sequence.size() : mailboxFolder.getMessageCount();
+        }
     }
 
     @Override
-    public synchronized Message[] getMessages() throws MessagingException {
+    public Message[] getMessages() throws MessagingException {
         abortIdle();
-        checkExists();
-        return wrap(mailboxFolder.getMessages());
+        synchronized (this) {
+            checkExists();
+            return wrap(mailboxFolder.getMessages());
+        }
     }
 
     @Override
-    public synchronized Message[] getMessages(int low, int high)
+    public Message[] getMessages(int low, int high)
         throws MessagingException
     {
         abortIdle();
-        checkExists();
-        checkOpened();
-        List<Message> messages = new ArrayList<>();
-        for (int i = low; i <= high; i++) {
-            Message m = mailboxFolder.getByMsgNum(i);
-            messages.add(new MockMessage(m, this));
+        synchronized (this) {
+            checkExists();
+            checkOpened();
+            return wrap(mailboxFolder.getByIds(sequence.range(low, high).toArray()));
         }
-        return messages.toArray(new Message[messages.size()]);
     }
 
     @Override
-    public synchronized Message[] getMessagesByUID(long start, long end)
+    public Message[] getMessagesByUID(long start, long end)
         throws MessagingException
     {
         abortIdle();
-        checkExists();
-        checkOpened();
-        return wrap(mailboxFolder.getByIds(start, end));
+        synchronized (this) {
+            checkExists();
+            checkOpened();
+            return wrap(mailboxFolder.getByIds(start, end));
+        }
     }
 
     @Override
-    public synchronized Message[] getMessagesByUID(long[] uids)
+    public Message[] getMessagesByUID(long[] uids)
         throws MessagingException
     {
         abortIdle();
-        checkExists();
-        checkOpened();
-        return wrap(mailboxFolder.getByIds(uids));
+        synchronized (this) {
+            checkExists();
+            checkOpened();
+            return wrap(mailboxFolder.getByIds(uids));
+        }
+    }
+
+    public Message[] getMessagesByUID(UIDSet[] uidsets)
+        throws MessagingException
+    {
+        abortIdle();
+        synchronized (this) {
+            checkExists();
+            checkOpened();
+            return wrap(mailboxFolder.getByIds(uidsets));
+        }
     }
 
     @Override
     public Message[] getMessagesByUIDChangedSince(long start,
         long end, long modseq) throws MessagingException
     {
-        throw new MessagingException("CONDSTORE not supported");
+        abortIdle();
+        synchronized (this) {
+            checkExists();
+            checkOpened();
+            return wrap(mailboxFolder.getByIdsChangedSince(start, end, modseq));
+        }
     }
 
     @Override
@@ -436,14 +536,16 @@ public class IMAPMockFolder extends IMAPFolder implements
     }
 
     @Override
-    public synchronized int getNewMessageCount() throws MessagingException {
+    public int getNewMessageCount() throws MessagingException {
         abortIdle();
-        checkExists();
-        return mailboxFolder.getByFlags(new Flags(Flag.RECENT), true).size();
+        synchronized (this) {
+            checkExists();
+            return mailboxFolder.getMessageCount(Flag.RECENT, true);
+        }
     }
 
     @Override
-    public synchronized Folder getParent() throws MessagingException {
+    public Folder getParent() throws MessagingException {
         checkExists();
         if (mailboxFolder.getParent() == null) {
             throw new MessagingException("no parent, is already default root");
@@ -463,23 +565,29 @@ public class IMAPMockFolder extends IMAPFolder implements
     }
 
     @Override
-    public synchronized char getSeparator() throws MessagingException {
+    public char getSeparator() throws MessagingException {
         abortIdle();
-        return MailboxFolder.SEPARATOR;
+        synchronized (this) {
+            return MailboxFolder.SEPARATOR;
+        }
     }
 
     @Override
     public Message[] getSortedMessages(SortTerm[] term)
         throws MessagingException
     {
-        throw new MessagingException("SORT not supported");
+        return getSortedMessages(term, null);
     }
 
     @Override
     public Message[] getSortedMessages(SortTerm[] term, SearchTerm sterm)
         throws MessagingException
     {
-        throw new MessagingException("SORT not supported");
+        abortIdle();
+        synchronized (this) {
+            checkOpened();
+            return wrap(mailboxFolder.getSortedMessages(term, sterm));
+        }
     }
 
     @Override
@@ -491,28 +599,36 @@ public class IMAPMockFolder extends IMAPFolder implements
     }
 
     @Override
-    public synchronized long getUID(Message message) throws MessagingException {
+    public long getUID(Message message) throws MessagingException {
         abortIdle();
-        return mailboxFolder.getUID(message);
+        synchronized (this) {
+            return mailboxFolder.getUID(message);
+        }
     }
 
     @Override
-    public synchronized long getUIDNext() throws MessagingException {
+    public long getUIDNext() throws MessagingException {
         abortIdle();
-        return mailboxFolder.getUniqueMessageId() + 10;
+        synchronized (this) {
+            return mailboxFolder.getUniqueMessageId() + 10;
+        }
     }
 
     @Override
-    public synchronized long getUIDValidity() throws MessagingException {
+    public long getUIDValidity() throws MessagingException {
         abortIdle();
-        return mailboxFolder.getUidValidity();
+        synchronized (this) {
+            return mailboxFolder.getUidValidity();
+        }
     }
 
     @Override
-    public synchronized int getUnreadMessageCount() throws MessagingException {
+    public int getUnreadMessageCount() throws MessagingException {
         abortIdle();
-        checkExists();
-        return mailboxFolder.getByFlags(new Flags(Flags.Flag.SEEN), false).size();
+        synchronized (this) {
+            checkExists();
+            return mailboxFolder.getMessageCount(Flag.SEEN, false);
+        }
     }
 
     @Override
@@ -570,9 +686,11 @@ public class IMAPMockFolder extends IMAPFolder implements
     }
 
     @Override
-    public synchronized boolean isSubscribed() {
+    public boolean isSubscribed() {
         abortIdle();
-        return mailboxFolder.isSubscribed();
+        synchronized (this) {
+            return mailboxFolder.isSubscribed();
+        }
     }
 
     @Override
@@ -602,10 +720,20 @@ public class IMAPMockFolder extends IMAPFolder implements
 
     @Override
     public void messageAdded(MailboxFolder mf, MockMessage msg) {
+        sequence.add(msg.getMockid());
         notifyMessageAddedListeners(new Message[] { msg });
         idleLock.release();
     }
 
+    @Override
+    public void messagesAdded(MailboxFolder mf, List<MockMessage> msgs) {
+        for (MockMessage msg : msgs) {
+            sequence.add(msg.getMockid());
+        }
+        notifyMessageAddedListeners(msgs.toArray(new Message[0]));
+        idleLock.release();
+    }
+
     @Override
     public void messageChanged(MailboxFolder mf, MockMessage msg,
         boolean headerChanged, boolean flagsChanged)
@@ -616,69 +744,99 @@ public class IMAPMockFolder extends IMAPFolder implements
 
     @Override
     public void messageExpunged(MailboxFolder mf, MockMessage msg, boolean removed) {
+        sequence.remove(msg.getMockid());
         idleLock.release();
     }
 
     @Override
-    public synchronized void open(int mode) throws MessagingException {
-        checkClosed();
-        checkExists();
-        opened = true;
-        openMode = mode;
-        notifyConnectionListeners(ConnectionEvent.OPENED);
+    public void open(int mode) throws MessagingException {
+        // updated from the events of the folder, even while not yet opened
+        mailboxFolder.getMailbox().awaitEvents();
+        synchronized (this) {
+            checkClosed();
+            checkExists();
+            mailboxFolder.resetSequence(sequence);
+            opened = true;
+            openMode = mode;
+            notifyConnectionListeners(ConnectionEvent.OPENED);
+        }
     }
 
     @Override
-    public synchronized List<MailEvent> open(int mode, ResyncData rd)
+    public List<MailEvent> open(int mode, ResyncData rd)
         throws MessagingException
     {
-        if (rd == null) {
-            open(mode);
-            return null;
-        }
+        open(mode);
+        synchronized (this) {
+            if (rd == null || rd == ResyncData.CONDSTORE
+                || rd.getUIDValidity() != mailboxFolder.getUidValidity())
+            {
+                // nothing to resynchronize, after a change of the UIDVALIDITY
+                // the client has to discard its cache
+                return null;
+            }
 
-        throw new MessagingException("CONDSTORE and QRESYNC not supported");
+            // only UIDs known to the client are reported, if it sent them
+            UIDSet[] known = ResyncData0.getUIDSet(rd);
+            List<MailEvent> events = new ArrayList<>();
+            long[] vanished = mailboxFolder.getExpungedIdsSince(rd.getModSeq(), known);
+            if (vanished.length > 0) {
+                events.add(new MessageVanishedEvent(this, vanished));
+            }
+            Collection<Message> changed = mailboxFolder.getByIdsChangedSince(1,
+                UIDFolder.LASTUID, rd.getModSeq(), known);
+            for (Message m : wrap(changed)) {
+                events.add(new MessageChangedEvent(this, MessageChangedEvent.FLAGS_CHANGED, m));
+            }
+            return events;
+        }
     }
 
     @Override
-    public synchronized boolean renameTo(Folder f) throws MessagingException {
+    public boolean renameTo(Folder f) throws MessagingException {
         abortIdle();
-        checkClosed(); // insure that we are closed.
-        checkExists();
-        if (f.getStore() != store) {
-            throw new MessagingException("Can't rename across Stores");
-        }
+        synchronized (this) {
+            checkClosed(); // insure that we are closed.
+            checkExists();
+            if (f.getStore() != store) {
+                throw new MessagingException("Can't rename across Stores");
+            }
 
-        mailboxFolder.renameFolder(f.getName());
-        notifyFolderRenamedListeners(f);
-        return true;
+            mailboxFolder.renameFolder(f.getName());
+            notifyFolderRenamedListeners(f);
+            return true;
+        }
     }
 
     @Override
-    public synchronized Message[] search(SearchTerm term) throws MessagingException {
+    public Message[] search(SearchTerm term) throws MessagingException {
         return search(term, null);
     }
 
     @Override
-    public synchronized Message[] search(SearchTerm term, Message[] msgs)
+    public Message[] search(SearchTerm term, Message[] msgs)
         throws MessagingException
     {
         abortIdle();
-        checkOpened();
-        return wrap(mailboxFolder.search(term, msgs));
+        synchronized (this) {
+            checkOpened();
+            return wrap(mailboxFolder.search(term, msgs));
+        }
     }
 
     @Override
-    public synchronized void setFlags(Message[] msgs, Flags flag, boolean value)
+    public void setFlags(Message[] msgs, Flags flag, boolean value)
         throws MessagingException
     {
         abortIdle();
-        checkOpened();
+        synchronized (this) {
+            checkOpened();
 
-        for (Message message : msgs) {
-            Message m = mailboxFolder.getById(((MockMessage) message).getMockid());
-            if (m != null) {
-                m.setFlags(flag, value);
+            for (Message message : msgs) {
+                Message m = mailboxFolder.getById(((MockMessage) message).getMockid());
+                if (m != null) {
+                    m.setFlags(flag, value);
+                }
             }
         }
     }
@@ -689,11 +847,13 @@ public class IMAPMockFolder extends IMAPFolder implements
     }
 
     @Override
-    public synchronized void setSubscribed(boolean subscribe)
+    public void setSubscribed(boolean subscribe)
         throws MessagingException
     {
         abortIdle();
-        mailboxFolder.setSubscribed(subscribe);
+        synchronized (this) {
+            mailboxFolder.setSubscribed(subscribe);
+        }
     }
 
     @Override
@@ -702,12 +862,14 @@ public class IMAPMockFolder extends IMAPFolder implements
     }
 
     @Override
-    public synchronized void moveMessages(Message[] msgs, Folder folder)
+    public void moveMessages(Message[] msgs, Folder folder)
         throws MessagingException
     {
         abortIdle();
-        checkOpened();
-        checkExists();
+        synchronized (this) {
+            checkOpened();
+            checkExists();
+        }
         if (msgs == null || folder == null || msgs.length == 0) {
             return;
         }
@@ -715,6 +877,7 @@ public class IMAPMockFolder extends IMAPFolder implements
             // destination is a different store.
             throw new MessagingException("Can't move to a different store");
         }
+        // the target folder is accessed without holding the lock of this one
         if (!folder.exists()) {
             throw new FolderNotFoundException(folder.getFullName()
                 + " does not exist", folder);
@@ -725,12 +888,14 @@ public class IMAPMockFolder extends IMAPFolder implements
     }
 
     @Override
-    public synchronized AppendUID[] moveUIDMessages(Message[] msgs,
+    public AppendUID[] moveUIDMessages(Message[] msgs,
         Folder folder) throws MessagingException
     {
         abortIdle();
-        checkOpened();
-        checkExists();
+        synchronized (this) {
+            checkOpened();
+            checkExists();
+        }
         if (msgs == null || folder == null || msgs.length == 0) {
             return null;
         }
@@ -742,6 +907,7 @@ public class IMAPMockFolder extends IMAPFolder implements
             throw new IllegalArgumentException(
                 "folder must be of type IMAPFolder");
         }
+        // the target folder is accessed without holding the lock of this one
         if (!folder.exists()) {
             throw new FolderNotFoundException(folder.getFullName()
                 + " does not exist", folder);
@@ -757,9 +923,18 @@ public class IMAPMockFolder extends IMAPFolder implements
         int i = 0;
         Message[] ret = new Message[msgs.size()];
         for (Message m : msgs) {
-            ret[i++] = new MockMessage(m, this);
+            ret[i++] = wrap(m);
         }
         return ret;
     }
 
+    /**
+     * Binds a stored message to this folder, numbered by the sequence of
+     * this folder. Expunged messages keep their last message number.
+     */
+    private Message wrap(Message m) throws MessagingException {
+        int msgnum = sequence.msgnum(((MockMessage) m).getMockid());
+        return new MockMessage(m, this, msgnum > 0 ? msgnum : m.getMessageNumber(), fetchTracker);
+    }
+
 }
@@ -142,7 +142,10 @@ public class IMAPMockStore extends IMAPStore {
         String c = capability.toUpperCase(Locale.ROOT);
         return c.startsWith("IMAP4")
             || c.startsWith("IDLE")
-            || c.startsWith("ID");
+            || c.startsWith("ID")
+            || c.equals("SORT")
+            || c.equals("CONDSTORE")
+            || c.equals("QRESYNC");
     }
 
     @Override
@@ -0,0 +1,109 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thread safe set of weakly referenced listeners. A listener which is no
+ * longer referenced elsewhere is dropped once it has been garbage
+ * collected, so folder handles which are never closed do not leak.
+ */
+final class ListenerRegistry<L> {
+
+    private final ReferenceQueue<L> collected = new ReferenceQueue<>();
+    private final List<WeakReference<L>> listeners = new ArrayList<>();
+
+    synchronized void add(L listener) {
+        purge();
+        for (WeakReference<L> ref : listeners) {
+            if (ref.get() == listener) {
+                return;
+            }
+        }
+        listeners.add(new WeakReference<>(listener, collected));
+    }
+
+    synchronized void remove(L listener) {
+        purge();
+        listeners.removeIf(ref -> ref.get() == listener);
+    }
+
+    /**
+     * @return the number of listeners which have not been garbage
+     *         collected yet
+     */
+    synchronized int size() {
+        purge();
+        int size = 0;
+        for (WeakReference<L> ref : listeners) {
+            if (ref.get() != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the live listeners in registration order
+     */
+    synchronized L[] toArray(L[] a) {
+        purge();
+        List<L> result = new ArrayList<>(listeners.size());
+        for (WeakReference<L> ref : listeners) {
+            L listener = ref.get();
+            if (listener != null) {
+                result.add(listener);
+            }
+        }
+        return result.toArray(a);
+    }
+
+    /**
+     * Clears the reference to the given listener as if it had been garbage
+     * collected, for tests.
+     */
+    synchronized void collect(L listener) {
+        for (WeakReference<L> ref : listeners) {
+            if (ref.get() == listener) {
+                ref.clear();
+                ref.enqueue();
+            }
+        }
+    }
+
+    private void purge() {
+        Reference<? extends L> ref = collected.poll();
+        if (ref == null) {
+            return;
+        }
+        while (ref != null) {
+            ref = collected.poll();
+        }
+        listeners.removeIf(r -> r.get() == null);
+    }
+
+}
@@ -23,12 +23,19 @@ package com.github.golovnin.javamail.mock3;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import jakarta.mail.Flags;
 import jakarta.mail.Flags.Flag;
 import jakarta.mail.Message;
@@ -37,10 +44,15 @@ import jakarta.mail.UIDFolder;
 import jakarta.mail.internet.MimeMessage;
 import jakarta.mail.search.SearchTerm;
 
+import com.sun.mail.imap.SortTerm;
+import com.sun.mail.imap.protocol.UIDSet;
+
 public class MailboxFolder implements MockMessage.FlagChangeListener {
 
     private static final Flags RECENT_FLAGS = new Flags(Flag.RECENT);
     private static final Flags DELETED_FLAGS = new Flags(Flag.DELETED);
+    // UIDs are assigned in ascending order starting with this one
+    private static final long FIRST_UID = 11;
 
     public interface MailboxEventListener {
 
@@ -52,6 +64,17 @@ public class MailboxFolder implements MockMessage.FlagChangeListener {
 
         void messageAdded(MailboxFolder mf, MockMessage msg);
 
+        /**
+         * Called once for all messages added by
+         * {@link MailboxFolder#addAll(Collection)}, the messages are in UID
+         * order.
+         */
+        default void messagesAdded(MailboxFolder mf, List<MockMessage> msgs) {
+            for (MockMessage msg : msgs) {
+                messageAdded(mf, msg);
+            }
+        }
+
         void messageChanged(MailboxFolder mf, MockMessage msg,
             boolean headerChanged, boolean flagsChanged);
 
@@ -63,13 +86,29 @@ public class MailboxFolder implements MockMessage.FlagChangeListener {
 
     static final char SEPARATOR = '/';
 
-    private final MockMailbox mailbox;
-    private final List<MailboxFolder> children = new ArrayList<>();
-    private final Map<Long, MockMessage> messages = new TreeMap<>();
-    private final List<MailboxEventListener> mailboxEventListeners =
-        Collections.synchronizedList(new ArrayList<>());
+    // mutations of the folder serialize on the write lock and publish an
+    // immutable snapshot when done, plain reads use the latest snapshot
+    // without locking; the lock is reentrant, because folder methods call
+    // each other and flag changes of messages added under the write lock
+    // call back
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock readLock = lock.readLock();
+    private final Lock writeLock = lock.writeLock();
 
-    private boolean exists = true;
+    private final MockMailbox mailbox;
+    private final List<MailboxFolder> children = new CopyOnWriteArrayList<>();
+    private final MessageStore messages = new MessageStore();
+    private volatile FolderSnapshot snapshot;
+    private final FlagIndex flagIndex = new FlagIndex();
+    private HeaderIndex headerIndex;
+    private ParsedHeaderCache rawStorage;
+    private ContentCodec codec;
+    private ForkJoinPool searchPool;
+    private int parallelSearchThreshold;
+    private final ListenerRegistry<MailboxEventListener> mailboxEventListeners =
+        new ListenerRegistry<>();
+
+    private volatile boolean exists = true;
 
     private String name;
     private MailboxFolder parent;
@@ -77,7 +116,14 @@ public class MailboxFolder implements MockMessage.FlagChangeListener {
     private boolean subscribed;
 
     private long uidValidity = 50;
-    private long uniqueMessageId = 10;
+    private long uniqueMessageId = FIRST_UID - 1;
+    private long sizeInBytes;
+
+    // modification sequences (RFC 7162), the index maps the current
+    // modification sequence of each message to its UID
+    private long highestModSeq = 1;
+    private final TreeMap<Long, Long> modSeqIndex = new TreeMap<>();
+    private final TombstoneLog tombstones = new TombstoneLog();
 
     protected MailboxFolder(String name, MockMailbox mb, boolean exists) {
         if (name == null) {
@@ -88,29 +134,126 @@ public class MailboxFolder implements MockMessage.FlagChangeListener {
 
         this.mailbox = mb;
         this.exists = exists;
+        publish();
     }
 
-    public synchronized MockMessage add(MimeMessage e) throws MessagingException {
-        checkExists();
+    public MockMessage add(MimeMessage e) throws MessagingException {
+        writeLock.lock();
+        try {
+            checkExists();
+
+            MockMessage mockMessage = newMessage(e, uniqueMessageId + 1);
+            uniqueMessageId++;
+            insert(mockMessage);
+            publish();
+
+            fire(l -> l.messageAdded(this, mockMessage));
+
+            return mockMessage;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Adds all given messages at once. The messages get a block of
+     * consecutive UIDs in the given order, either all or none of them are
+     * added, and the listeners are notified by a single
+     * {@link MailboxEventListener#messagesAdded} event.
+     *
+     * @return the added messages
+     */
+    public List<MockMessage> addAll(Collection<? extends MimeMessage> msgs)
+        throws MessagingException
+    {
+        writeLock.lock();
+        try {
+            checkExists();
+            if (msgs.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            // copy all messages before the UID block is committed
+            List<MockMessage> added = new ArrayList<>(msgs.size());
+            long uid = uniqueMessageId;
+            try {
+                for (MimeMessage e : msgs) {
+                    added.add(newMessage(e, ++uid));
+                }
+            } catch (MessagingException | RuntimeException ex) {
+                for (MockMessage mockMessage : added) {
+                    mockMessage.releaseContent(ContentStore.SHARED);
+                }
+                throw ex;
+            }
+            uniqueMessageId = uid;
 
-        uniqueMessageId++;
+            for (MockMessage mockMessage : added) {
+                insert(mockMessage);
+            }
+            publish();
 
-        MockMessage mockMessage = new MockMessage(e, uniqueMessageId, this, this);
+            List<MockMessage> batch = Collections.unmodifiableList(added);
+            fire(l -> l.messagesAdded(this, batch));
 
-        mockMessage.setSpecialHeader("Message-ID", String.valueOf(uniqueMessageId));
+            return batch;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private MockMessage newMessage(MimeMessage e, long uid)
+        throws MessagingException
+    {
+        MockMessage mockMessage = rawStorage == null
+            ? new MockMessage(e, uid, this, this)
+            : new MockMessage(e, uid, this, this, rawStorage);
+
+        mockMessage.setSpecialHeader("Message-ID", String.valueOf(uid));
         mockMessage.setSpecialHeader("X-Mock-Folder", getFullName());
         mockMessage.setFlags(RECENT_FLAGS, true);
 
-        messages.put(uniqueMessageId, mockMessage);
+        mockMessage.getRfc822Size(); // cached, so inserting cannot fail
+        if (rawStorage == null) {
+            // raw messages are parsed on first access only
+            mockMessage.getSortKey(); // extract the sort keys while adding
+            mockMessage.computeStructure();
+        }
+        mockMessage.shareContent(ContentStore.SHARED, codec);
+        return mockMessage;
+    }
 
-        for (MailboxEventListener mailboxEventListener : mailboxEventListeners) {
-            mailboxEventListener.messageAdded(this, mockMessage);
+    private void insert(MockMessage mockMessage) throws MessagingException {
+        addSizeInBytes(mockMessage.getRfc822Size());
+        if (headerIndex != null) {
+            headerIndex.add(mockMessage);
         }
 
-        return mockMessage;
+        Flags flags = mockMessage.getFlags();
+        int flagBits = FlagIndex.bitsOf(flags);
+        mockMessage.setIndexedUserFlags(sortedUserFlags(flags));
+        long modSeq = ++highestModSeq;
+        modSeqIndex.put(modSeq, mockMessage.getMockid());
+        int index = messages.add(mockMessage, flagBits, modSeq);
+        if (index == messages.size() - 1) {
+            flagIndex.update(index, 0, flagBits);
+        } else {
+            flagIndex.rebuild(messages);
+        }
+        renumber(index);
     }
 
-    public synchronized void addMailboxEventListener(MailboxEventListener l) {
+    /**
+     * Registers the given listener. The listener is weakly referenced, it
+     * is dropped once it is no longer referenced elsewhere.
+     *
+     * <p>The listener is called asynchronously: a dispatcher thread of the
+     * mailbox delivers the events of all its folders in order, after the
+     * change has been made and without holding any folder lock. Call
+     * {@link MockMailbox#awaitEvents()} to wait for the delivery of the
+     * events of the changes made so far.
+     */
+    public void addMailboxEventListener(MailboxEventListener l) {
         if (l != null) {
             mailboxEventListeners.add(l);
         }
@@ -139,58 +282,78 @@ public class MailboxFolder implements MockMessage.FlagChangeListener {
         }
     }
 
-    public synchronized MailboxFolder create() {
-        if (exists) {
-            throw new IllegalStateException("already exists");
-        }
-        checkFolderName(this.name);
+    public MailboxFolder create() {
+        writeLock.lock();
+        try {
+            if (exists) {
+                throw new IllegalStateException("already exists");
+            }
+            checkFolderName(this.name);
 
-        exists = true;
+            exists = true;
 
-        // TODO set parent and/or children to exists?
+            // TODO set parent and/or children to exists?
 
-        if (parent != null && !parent.exists) {
-            parent.create();
-        }
+            if (parent != null && !parent.exists) {
+                parent.create();
+            }
 
-        /*children.clear();
+            /*children.clear();
 
-        if (parent != null) {
-            parent.children.add(this);
-        }
+            if (parent != null) {
+                parent.children.add(this);
+            }
 
-        if (mailboxEventListener != null) {
-            mailboxEventListener.folderCreated(this);
-        }*/
+            if (mailboxEventListener != null) {
+                mailboxEventListener.folderCreated(this);
+            }*/
 
-        for (MailboxEventListener mailboxEventListener : mailboxEventListeners) {
-            mailboxEventListener.folderCreated(this);
-        }
+            fire(l -> l.folderCreated(this));
 
-        return this;
+            return this;
+        } finally {
+            writeLock.unlock();
+        }
     }
 
-    public synchronized void deleteFolder(boolean recurse) {
-        checkExists();
-        checkFolderName(this.name);
+    public void deleteFolder(boolean recurse) {
+        writeLock.lock();
+        try {
+            checkExists();
+            checkFolderName(this.name);
 
-        if (isRoot()) {
-            throw new IllegalArgumentException("root cannot be deleted");
-        }
+            if (isRoot()) {
+                throw new IllegalArgumentException("root cannot be deleted");
+            }
 
-        messages.clear();
+            for (int i = 0; i < messages.size(); i++) {
+                messages.getAt(i).releaseContent(ContentStore.SHARED);
+            }
+            messages.clear();
+            flagIndex.rebuild(messages);
+            modSeqIndex.clear();
+            tombstones.clear();
+            addSizeInBytes(-sizeInBytes);
+            if (headerIndex != null) {
+                headerIndex.clear();
+            }
+            if (rawStorage != null) {
+                rawStorage.clear();
+            }
+            publish();
 
-        if (recurse) {
-            for (MailboxFolder mf : getChildren()) {
-                mf.deleteFolder(recurse);
+            if (recurse) {
+                for (MailboxFolder mf : getChildren()) {
+                    mf.deleteFolder(recurse);
+                }
             }
-        }
 
-        parent.children.remove(this);
-        this.exists = false;
+            parent.children.remove(this);
+            this.exists = false;
 
-        for (MailboxEventListener mailboxEventListener : mailboxEventListeners) {
-            mailboxEventListener.folderDeleted(this);
+            fire(l -> l.folderDeleted(this));
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -207,255 +370,560 @@ public class MailboxFolder implements MockMessage.FlagChangeListener {
         return false;
     }
 
-    public synchronized Collection<Message> expunge() throws MessagingException {
-        checkExists();
-        List<Message> expunged = new ArrayList<>();
-        for (Message msg : getByFlags(DELETED_FLAGS, true)) {
-            MockMessage message = (MockMessage) msg;
-            expunged.add(messages.remove(message.getMockid()));
-            message.setExpunged(true);
-
-            for (MailboxEventListener mailboxEventListener : mailboxEventListeners) {
-                mailboxEventListener.messageExpunged(this, message, true);
+    public Collection<Message> expunge() throws MessagingException {
+        writeLock.lock();
+        try {
+            checkExists();
+            List<Message> expunged = new ArrayList<>();
+            for (Message msg : getByFlags(DELETED_FLAGS, true)) {
+                MockMessage message = (MockMessage) msg;
+                expunged.add(message);
+                message.setExpunged(true);
             }
-        }
 
-        return expunged;
+            removeExpunged(expunged);
+            return expunged;
+        } finally {
+            writeLock.unlock();
+        }
     }
 
-    public synchronized Collection<Message> expunge(Message[] msgs) throws MessagingException {
-        checkExists();
+    public Collection<Message> expunge(Message[] msgs) throws MessagingException {
+        writeLock.lock();
+        try {
+            checkExists();
+
+            List<Message> expunged = new ArrayList<>();
+            for (Message msg : msgs) {
+                MockMessage message = messages.get(((MockMessage) msg).getMockid());
+                if (   message == null
+                    || message.isExpunged()
+                    || !message.getFlags().contains(Flag.DELETED))
+                {
+                    continue;
+                }
 
-        List<Long> toExpunge = new ArrayList<>();
-        for (Message msg : msgs) {
-            toExpunge.add(((MockMessage) msg).getMockid());
+                expunged.add(message);
+                message.setExpunged(true);
+            }
+
+            expunged.sort(Comparator.comparingLong(m -> ((MockMessage) m).getMockid()));
+            removeExpunged(expunged);
+            return expunged;
+        } finally {
+            writeLock.unlock();
         }
+    }
 
-        List<Message> expunged = new ArrayList<>();
-        for (Message msg : getByFlags(DELETED_FLAGS, true)) {
-            MockMessage message = (MockMessage) msg;
-            if (!toExpunge.contains(message.getMockid())) {
-                continue;
-            }
+    public void delete(Message[] msgs) throws MessagingException {
+        writeLock.lock();
+        try {
+            checkExists();
 
-            expunged.add(messages.remove(message.getMockid()));
-            message.setExpunged(true);
+            List<Message> deleted = new ArrayList<>();
+            for (Message msg : msgs) {
+                MockMessage message = messages.get(((MockMessage) msg).getMockid());
 
-            for (MailboxEventListener mailboxEventListener : mailboxEventListeners) {
-                mailboxEventListener.messageExpunged(this, message, true);
+                if (message != null && !message.isExpunged()) {
+                    message.setExpunged(true);
+                    deleted.add(message);
+                }
             }
-        }
 
-        return expunged;
+            removeExpunged(deleted);
+        } finally {
+            writeLock.unlock();
+        }
     }
 
-    public synchronized void delete(Message[] msgs) throws MessagingException {
-        checkExists();
+    private void removeExpunged(List<Message> expunged) {
+        if (expunged.isEmpty()) {
+            return;
+        }
 
-        for (Message msg : msgs) {
-            MockMessage message = (MockMessage) msg;
+        highestModSeq++;
+        int first = messages.size();
+        for (Message msg : expunged) {
+            long uid = ((MockMessage) msg).getMockid();
+            int index = messages.indexOf(uid);
+            if (index >= 0) {
+                modSeqIndex.remove(messages.modSeqAt(index));
+                tombstones.add(uid, highestModSeq);
+                first = Math.min(first, index);
+            }
+        }
 
-            if (messages.remove(message.getMockid()) != null) {
-                message.setExpunged(true);
+        // compact the store in a single pass, the expunged messages keep
+        // their last message number
+        messages.removeIf(MockMessage::isExpunged);
+        flagIndex.rebuild(messages);
+        renumber(first);
 
-                for (MailboxEventListener mailboxEventListener : mailboxEventListeners) {
-                    mailboxEventListener.messageExpunged(this, message, true);
-                }
+        for (Message msg : expunged) {
+            try {
+                addSizeInBytes(-((MockMessage) msg).getRfc822Size());
+            } catch (MessagingException e) {
+                throw new IllegalStateException(e);
+            }
+            if (headerIndex != null) {
+                headerIndex.remove((MockMessage) msg);
             }
+            if (rawStorage != null) {
+                rawStorage.remove((MockMessage) msg);
+            }
+            ((MockMessage) msg).releaseContent(ContentStore.SHARED);
         }
+        publish();
+
+        fire(l -> {
+            for (Message msg : expunged) {
+                l.messageExpunged(this, (MockMessage) msg, true);
+            }
+        });
     }
 
-    public synchronized Collection<Message> getByFlags(Flags flags,
+    /**
+     * Queues the given event for the listeners registered right now. The
+     * mailbox calls them in order, but never while holding the lock of
+     * this folder.
+     */
+    private void fire(Consumer<MailboxEventListener> event) {
+        mailbox.dispatch(mailboxEventListeners.toArray(new MailboxEventListener[0]), event);
+    }
+
+    public Collection<Message> getByFlags(Flags flags,
         boolean mustSet) throws MessagingException
     {
-        checkExists();
-        List<Message> result = new ArrayList<>();
-        int num = 0;
+        readLock.lock();
+        try {
+            checkExists();
+            List<Message> result = new ArrayList<>();
+
+            if (FlagIndex.isIndexed(flags)) {
+                BitSet matching = flagIndex.matching(FlagIndex.bitsOf(flags), messages.size());
+                if (!mustSet) {
+                    matching.flip(0, messages.size());
+                }
 
-        for (MockMessage mockMessage : messages.values()) {
-            if (   mustSet && mockMessage.getFlags().contains(flags)
-                || !mustSet && !mockMessage.getFlags().contains(flags))
-            {
-                mockMessage.setMessageNumber(++num);
-                result.add(mockMessage);
+                for (int i = matching.nextSetBit(0); i >= 0; i = matching.nextSetBit(i + 1)) {
+                    result.add(messages.getAt(i));
+                }
+                return result;
             }
 
+            for (int i = 0; i < messages.size(); i++) {
+                MockMessage mockMessage = messages.getAt(i);
+                if (   mustSet && mockMessage.getFlags().contains(flags)
+                    || !mustSet && !mockMessage.getFlags().contains(flags))
+                {
+                    result.add(mockMessage);
+                }
+
+            }
+            return result;
+        } finally {
+            readLock.unlock();
         }
-        return result;
     }
 
-    public synchronized Message getById(long id) {
+    public Message getById(long id) {
         checkExists();
-        return messages.get(id);
+        return snapshot.getById(id);
     }
 
-    public synchronized Collection<Message> getByIds(long start, long end) {
+    public Collection<Message> getByIds(long start, long end) {
         checkExists();
-        List<Message> result = new ArrayList<>();
-        int num = 0;
+        FolderSnapshot current = snapshot;
+        int size = current.getMessageCount();
+        if (size == 0) {
+            return Collections.emptyList();
+        }
 
-        MockMessage lastMsg = null;
-        for (MockMessage mockMessage : messages.values()) {
-            lastMsg = mockMessage;
+        int from = current.lowerBound(start);
+        int to = end == UIDFolder.LASTUID ? size : current.upperBound(end);
 
-            if (end == UIDFolder.LASTUID) {
-                if (getMessageCount() != 1 && mockMessage.getMockid() < start) {
-                    continue;
+        if (from >= to) {
+            if (end != UIDFolder.LASTUID) {
+                return Collections.emptyList();
+            }
+            // "n:*" always includes the message with the highest UID
+            from = size - 1;
+            to = size;
+        }
+
+        return current.getRange(from, to);
+    }
+
+    /**
+     * Returns the messages in the given UID range whose modification
+     * sequence is greater than the given one, in UID order. An end of
+     * {@link UIDFolder#LASTUID} denotes an open range.
+     */
+    public Collection<Message> getByIdsChangedSince(long start,
+        long end, long modSeq)
+    {
+        return getByIdsChangedSince(start, end, modSeq, null);
+    }
+
+    /**
+     * Like {@link #getByIdsChangedSince(long, long, long)}, but returns
+     * only messages whose UID is in the given sets, the UIDs known to a
+     * client, unless they are {@code null} (RFC 7162, QRESYNC).
+     */
+    public Collection<Message> getByIdsChangedSince(long start,
+        long end, long modSeq, UIDSet[] known)
+    {
+        readLock.lock();
+        try {
+            checkExists();
+            long last = end == UIDFolder.LASTUID ? Long.MAX_VALUE : end;
+
+            Collection<Long> changed = modSeqIndex.tailMap(modSeq, false).values();
+            long[] uids = new long[changed.size()];
+            int count = 0;
+            for (long uid : changed) {
+                if (uid >= start && uid <= last && contains(known, uid)) {
+                    uids[count++] = uid;
                 }
-            } else {
-                if (mockMessage.getMockid() < start || mockMessage.getMockid() > end) {
-                    continue;
+            }
+            return snapshot.getByUids(UidSet.of(Arrays.copyOf(uids, count)));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the UIDs of the messages expunged after the given
+     * modification sequence. If the tombstone log no longer reaches back
+     * that far, all assigned UIDs which are not in this folder any more
+     * are returned, which is a superset as permitted by RFC 7162.
+     */
+    public long[] getExpungedIdsSince(long modSeq) {
+        return getExpungedIdsSince(modSeq, null);
+    }
+
+    /**
+     * Like {@link #getExpungedIdsSince(long)}, but returns only UIDs in
+     * the given sets, the UIDs known to a client, unless they are
+     * {@code null} (RFC 7162, QRESYNC).
+     */
+    public long[] getExpungedIdsSince(long modSeq, UIDSet[] known) {
+        readLock.lock();
+        try {
+            checkExists();
+            UidSet result = new UidSet();
+            if (tombstones.covers(modSeq)) {
+                for (long uid : tombstones.expungedSince(modSeq).toArray()) {
+                    if (contains(known, uid)) {
+                        result.add(uid);
+                    }
                 }
+                return result.toArray();
             }
 
-            mockMessage.setMessageNumber(++num);
-            result.add(mockMessage);
+            int index = messages.lowerBound(FIRST_UID);
+            for (long uid = FIRST_UID; uid <= uniqueMessageId; uid++) {
+                if (index < messages.size() && messages.uidAt(index) == uid) {
+                    index++;
+                } else if (contains(known, uid)) {
+                    result.add(uid);
+                }
+            }
+            return result.toArray();
+        } finally {
+            readLock.unlock();
         }
+    }
 
-        if (end == UIDFolder.LASTUID && result.size() == 0 && lastMsg != null) {
-            lastMsg.setMessageNumber(++num);
-            result.add(lastMsg);
+    /**
+     * @return {@code true} if the given UID is in one of the given sets or
+     *         the sets are {@code null}
+     */
+    private static boolean contains(UIDSet[] uidsets, long uid) {
+        if (uidsets == null) {
+            return true;
+        }
+        for (UIDSet uidset : uidsets) {
+            long end = uidset.end == UIDFolder.LASTUID ? Long.MAX_VALUE : uidset.end;
+            if (uid >= uidset.start && uid <= end) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        return result;
+    /**
+     * Sets the number of expunged UIDs remembered for QRESYNC, default is
+     * {@value TombstoneLog#DEFAULT_CAPACITY}.
+     */
+    public void setTombstoneCapacity(int capacity) {
+        writeLock.lock();
+        try {
+            tombstones.resize(capacity);
+        } finally {
+            writeLock.unlock();
+        }
     }
 
-    public synchronized Collection<Message> getByIds(long[] id) {
+    public long getHighestModSeq() {
         checkExists();
-        List<Long> idlist = new ArrayList<>();
-        for (long value : id) {
-            idlist.add(value);
+        return snapshot.getHighestModSeq();
+    }
+
+    /**
+     * @return the modification sequence of the message with the given UID
+     *         or -1 if there is no such message
+     */
+    public long getModSeq(long uid) {
+        readLock.lock();
+        try {
+            int index = messages.indexOf(uid);
+            return index < 0 ? -1 : messages.modSeqAt(index);
+        } finally {
+            readLock.unlock();
         }
+    }
+
+    public Collection<Message> getByIds(long[] id) {
+        checkExists();
+        return snapshot.getByUids(UidSet.of(id));
+    }
+
+    /**
+     * Returns the messages matching the given IMAP UID sets. The sets may
+     * overlap and may be given in any order, the result is in UID order. An
+     * end of {@link UIDFolder#LASTUID} denotes an open range.
+     */
+    public Collection<Message> getByIds(UIDSet[] uidsets) {
+        checkExists();
+        FolderSnapshot current = snapshot;
+        UIDSet[] sorted = uidsets.clone();
+        Arrays.sort(sorted, Comparator.comparingLong(set -> set.start));
 
         List<Message> result = new ArrayList<>();
-        int num = 0;
-        for (MockMessage mockMessage : messages.values()) {
-            if (idlist.contains(mockMessage.getMockid())) {
-                mockMessage.setMessageNumber(++num);
-                result.add(mockMessage);
+        int from = 0;
+        for (UIDSet uidset : sorted) {
+            long end = uidset.end == UIDFolder.LASTUID ? Long.MAX_VALUE : uidset.end;
+            int lower = Math.max(from, current.lowerBound(uidset.start));
+            int upper = current.upperBound(end);
+            if (lower < upper) {
+                result.addAll(current.getRange(lower, upper));
             }
+            from = Math.max(from, upper);
         }
 
         return result;
     }
 
-    public synchronized Message getByMsgNum(int msgnum) {
+    /**
+     * Publishes the current state of this folder to lock-free readers,
+     * called by every mutation while holding the write lock.
+     */
+    private void publish() {
+        snapshot = messages.snapshot(flagIndex.counts(), sizeInBytes,
+            highestModSeq, uidValidity);
+    }
+
+    /**
+     * Returns an immutable view of the messages and counters of this
+     * folder as of the last completed mutation. Use it for repeatable reads
+     * without locking, the view never changes.
+     */
+    public FolderSnapshot getSnapshot() {
+        checkExists();
+        return snapshot;
+    }
+
+    /**
+     * Updates the message numbers of the stored messages starting at the
+     * given index after the store changed. Reads never renumber messages,
+     * open folders number messages by their own {@link SessionSequence}.
+     */
+    private void renumber(int from) {
+        for (int i = from; i < messages.size(); i++) {
+            messages.getAt(i).setMessageNumber(i + 1);
+        }
+    }
+
+    /**
+     * Initializes the given sequence with the messages of this folder.
+     * Holding the lock of the folder guarantees that no add or expunge
+     * event is missed. Events dispatched before but delivered after the
+     * reset are harmless, adding and removing UIDs is idempotent.
+     */
+    void resetSequence(SessionSequence sequence) {
+        readLock.lock();
+        try {
+            checkExists();
+            sequence.reset(messages.uids());
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public Message getByMsgNum(int msgnum) {
         checkExists();
+        FolderSnapshot current = snapshot;
+        checkMsgNum(current, msgnum);
 
-        List<MockMessage> sms = new ArrayList<>();
-        int num = 0;
+        return current.getByMsgNum(msgnum);
+    }
 
-        for (MockMessage mockMessage : messages.values()) {
-            mockMessage.setMessageNumber(++num);
-            sms.add(mockMessage);
+    public Collection<Message> getByMsgNums(int low, int high) {
+        checkExists();
+        if (low > high) {
+            return Collections.emptyList();
         }
+        FolderSnapshot current = snapshot;
+        checkMsgNum(current, low);
+        checkMsgNum(current, high);
+
+        return current.getRange(low - 1, high);
+    }
 
-        if (msgnum - 1 < 0 || msgnum > sms.size()) {
+    private void checkMsgNum(FolderSnapshot current, int msgnum) {
+        if (msgnum - 1 < 0 || msgnum > current.getMessageCount()) {
             throw new ArrayIndexOutOfBoundsException(
                 "message number (" + msgnum + ") out of bounds ("
-                    + sms.size() + ") for " + getFullName());
+                    + current.getMessageCount() + ") for " + getFullName());
         }
-
-        return sms.get(msgnum - 1);
     }
 
-    public synchronized List<MailboxFolder> getChildren() {
+    public List<MailboxFolder> getChildren() {
         checkExists();
         return Collections.unmodifiableList(new ArrayList<>(children));
     }
 
-    public synchronized String getFullName() {
-        // checkExists();
-        if (isRoot()) {
-            return "";
-        }
+    public String getFullName() {
+        readLock.lock();
+        try {
+            // checkExists();
+            if (isRoot()) {
+                return "";
+            }
 
-        return parent.isRoot() ? name : parent.getFullName() + SEPARATOR + name;
+            return parent.isRoot() ? name : parent.getFullName() + SEPARATOR + name;
+        } finally {
+            readLock.unlock();
+        }
     }
 
     public MockMailbox getMailbox() {
         return mailbox;
     }
 
-    public synchronized int getMessageCount() {
+    public int getMessageCount() {
         checkExists();
-        return messages.size();
+        return snapshot.getMessageCount();
     }
 
-    public synchronized Collection<Message> getMessages() {
+    /**
+     * @return the number of messages which have ({@code set == true}) or
+     *         do not have ({@code set == false}) the given system flag
+     */
+    public int getMessageCount(Flag flag, boolean set) {
         checkExists();
-        List<Message> result = new ArrayList<>();
-        int num = 0;
-        for (MockMessage mockMessage : messages.values()) {
-            mockMessage.setMessageNumber(++num);
-            result.add(mockMessage);
-        }
-        return result;
+        return snapshot.getMessageCount(flag, set);
+    }
+
+    public Collection<Message> getMessages() {
+        checkExists();
+        return new ArrayList<>(snapshot.getMessages());
+    }
+
+    /**
+     * @return the message number of the given message or -1 if the message
+     *         is not in this folder
+     */
+    public int getMsgNum(Message msg) {
+        checkExists();
+        int index = snapshot.indexOf(((MockMessage) msg).getMockid());
+        return index < 0 ? -1 : index + 1;
     }
 
     public String getName() {
         return name;
     }
 
-    public synchronized MailboxFolder getOrAddSubFolder(String name)
+    public MailboxFolder getOrAddSubFolder(String name)
         throws MessagingException
     {
-        // checkExists();
+        writeLock.lock();
+        try {
+            // checkExists();
 
-        if (name == null || name.trim().isEmpty()) {
-            throw new MessagingException("cannot get or add root folder");
-        }
+            if (name == null || name.trim().isEmpty()) {
+                throw new MessagingException("cannot get or add root folder");
+            }
 
-        String[] path = name.split(String.valueOf(SEPARATOR));
+            String[] path = name.split(String.valueOf(SEPARATOR));
+
+            MailboxFolder last = this;
+            for (String element : path) {
+                if (MockMailbox.isInbox(element)) {
+                    last = mailbox.getInbox();
+                } else {
+                    checkFolderName(element);
+                    MailboxFolder mbt = new MailboxFolder(element, mailbox, false);
+                    mbt.parent = last;
+
+                    int index;
+                    if ((index = last.children.indexOf(mbt)) != -1) {
+                        MailboxFolder tmp = last.children.get(index);
+                        if (tmp.isExists()) {
+                            last = tmp;
+                            continue;
+                        }
+                    }
 
-        MailboxFolder last = this;
-        for (String element : path) {
-            if (MockMailbox.isInbox(element)) {
-                last = mailbox.getInbox();
-            } else {
-                checkFolderName(element);
-                MailboxFolder mbt = new MailboxFolder(element, mailbox, false);
-                mbt.parent = last;
+                    last.children.add(mbt);
 
-                int index;
-                if ((index = last.children.indexOf(mbt)) != -1) {
-                    MailboxFolder tmp = last.children.get(index);
-                    if (tmp.isExists()) {
-                        last = tmp;
-                        continue;
-                    }
+                    last = mbt;
                 }
 
-                last.children.add(mbt);
-
-                last = mbt;
             }
 
-        }
+            return last;
 
-        return last;
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
+    public MailboxFolder getParent() {
+        readLock.lock();
+        try {
+            checkExists();
+            return parent;
+        } finally {
+            readLock.unlock();
+        }
     }
 
-    public synchronized MailboxFolder getParent() {
+    /**
+     * @return the RFC 822 size of all messages in this folder, or
+     *         {@link Integer#MAX_VALUE} if the size does not fit into an int
+     * @see #getSizeInBytesAsLong()
+     */
+    public int getSizeInBytes() throws MessagingException {
         checkExists();
-        return parent;
+        return (int) Math.min(snapshot.getSizeInBytes(), Integer.MAX_VALUE);
     }
 
-    public synchronized int getSizeInBytes() throws MessagingException {
+    /**
+     * @return the RFC 822 size of all messages in this folder
+     */
+    public long getSizeInBytesAsLong() {
         checkExists();
-        int size = 0;
-
-        for (MockMessage mockMessage : messages.values()) {
-            if (mockMessage.getSize() > 0) {
-                size += mockMessage.getSize();
-            }
-        }
+        return snapshot.getSizeInBytes();
+    }
 
-        return size;
+    private void addSizeInBytes(long delta) {
+        sizeInBytes += delta;
+        mailbox.addSizeInBytes(delta);
     }
 
-    public synchronized long getUID(Message msg) {
+    public long getUID(Message msg) {
         checkExists();
         return ((MockMessage) msg).getMockid();
     }
@@ -463,13 +931,18 @@ public class MailboxFolder implements MockMessage.FlagChangeListener {
     /**
      * @return the uidValidity
      */
-    public synchronized long getUidValidity() {
+    public long getUidValidity() {
         checkExists();
-        return uidValidity;
+        return snapshot.getUidValidity();
     }
 
-    protected synchronized long getUniqueMessageId() {
-        return uniqueMessageId;
+    protected long getUniqueMessageId() {
+        readLock.lock();
+        try {
+            return uniqueMessageId;
+        } finally {
+            readLock.unlock();
+        }
     }
 
     @Override
@@ -481,17 +954,22 @@ public class MailboxFolder implements MockMessage.FlagChangeListener {
         return result;
     }
 
-    public synchronized boolean hasMessages() {
+    public boolean hasMessages() {
         checkExists();
-        return messages.isEmpty();
+        return snapshot.getMessageCount() == 0;
     }
 
-    public synchronized void invalidateUid() {
-        checkExists();
-        uidValidity += 10;
-
-        for (MailboxEventListener mailboxEventListener : mailboxEventListeners) {
-            mailboxEventListener.uidInvalidated();
+    public void invalidateUid() {
+        writeLock.lock();
+        try {
+            checkExists();
+            uidValidity += 10;
+            tombstones.clear();
+            publish();
+
+            fire(MailboxEventListener::uidInvalidated);
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -518,15 +996,17 @@ public class MailboxFolder implements MockMessage.FlagChangeListener {
         return subscribed;
     }
 
-    public synchronized void markMessageAsDeleted(Message e) throws MessagingException {
+    public void markMessageAsDeleted(Message e) throws MessagingException {
         checkExists();
+        // not under the lock, the flag change takes the write lock itself
         ((MockMessage) e).setFlag(Flag.DELETED, true);
         // if(mailboxEventListener!=null)
         // mailboxEventListener.messageRemoved(this, ((MockMessage)e), false);
     }
 
-    public synchronized void markMessageAsSeen(Message e) throws MessagingException {
+    public void markMessageAsSeen(Message e) throws MessagingException {
         checkExists();
+        // not under the lock, the flag change takes the write lock itself
         ((MockMessage) e).setFlag(Flag.SEEN, true);
         // if(mailboxEventListener!=null)
         // mailboxEventListener.messageRemoved(this, ((MockMessage)e), false);
@@ -534,75 +1014,382 @@ public class MailboxFolder implements MockMessage.FlagChangeListener {
 
     @Override
     public void onFlagChange(MockMessage msg, Flags flags, boolean set) {
-        for (MailboxEventListener mailboxEventListener : mailboxEventListeners) {
-            mailboxEventListener.messageChanged(this, msg, false, true);
+        // folder bound views delegate their flags to the stored message,
+        // so only stored messages report changes
+        MockMessage stored = (MockMessage) snapshot.getById(msg.getMockid());
+
+        if (stored != msg) {
+            return;
         }
 
-        if (messages.size() > 0 && messages.get(msg.getMockid()) != null) {
-            try {
-                if (set && messages.get(msg.getMockid()).getFlags().contains(flags)) {
-                    return;
-                }
+        try {
+            if (!flagsChanged(stored)) {
+                return;
+            }
+        } catch (MessagingException e) {
+            throw new IllegalStateException(e);
+        }
+        fire(l -> l.messageChanged(this, msg, false, true));
+    }
 
-                if (set && !messages.get(msg.getMockid()).getFlags().contains(flags)) {
-                    messages.get(msg.getMockid()).setFlags(flags, set);
-                }
+    /**
+     * @return {@code true} if the flags of the given stored message differ
+     *         from the indexed ones and a new modification sequence has
+     *         been assigned
+     */
+    private boolean flagsChanged(MockMessage stored)
+        throws MessagingException
+    {
+        writeLock.lock();
+        try {
+            int index = messages.indexOf(stored.getMockid());
+            if (index < 0) {
+                return false;
+            }
 
-                if (!set && messages.get(msg.getMockid()).getFlags().contains(flags)) {
-                    messages.get(msg.getMockid()).setFlags(flags, set);
-                }
+            Flags flags = stored.getFlags();
+            int oldBits = messages.flagsAt(index);
+            int newBits = FlagIndex.bitsOf(flags);
+            String[] userFlags = sortedUserFlags(flags);
+            if (oldBits == newBits
+                && Arrays.equals(userFlags, stored.getIndexedUserFlags()))
+            {
+                // nothing changed, so no new modification sequence (RFC 7162)
+                return false;
+            }
 
-                if (!set && !messages.get(msg.getMockid()).getFlags().contains(flags)) {
-                    return;
-                }
-            } catch (MessagingException e) {
-                throw new IllegalStateException(e);
+            long modSeq = ++highestModSeq;
+            modSeqIndex.remove(messages.modSeqAt(index));
+            modSeqIndex.put(modSeq, stored.getMockid());
+            messages.setModSeqAt(index, modSeq);
+
+            if (oldBits != newBits) {
+                flagIndex.update(index, oldBits, newBits);
+                messages.setFlagsAt(index, newBits);
             }
+            stored.setIndexedUserFlags(userFlags);
+            publish();
+            return true;
+        } finally {
+            writeLock.unlock();
         }
     }
 
-    public synchronized void removeMailboxEventListener(MailboxEventListener l) {
+    private static String[] sortedUserFlags(Flags flags) {
+        String[] userFlags = flags.getUserFlags();
+        Arrays.sort(userFlags);
+        return userFlags;
+    }
+
+    public void removeMailboxEventListener(MailboxEventListener l) {
         if (l != null) {
             mailboxEventListeners.remove(l);
         }
     }
 
-    public synchronized void renameFolder(String newName) {
-        checkExists();
-        checkFolderName(this.name);
-        checkFolderName(newName);
-        String tmpOldName = name;
+    /**
+     * @return the number of registered listeners which have not been
+     *         garbage collected yet
+     */
+    public int getMailboxEventListenerCount() {
+        return mailboxEventListeners.size();
+    }
+
+    public void renameFolder(String newName) {
+        writeLock.lock();
+        try {
+            checkExists();
+            checkFolderName(this.name);
+            checkFolderName(newName);
+            String tmpOldName = name;
+
+            name = newName;
 
-        name = newName;
+            fire(l -> l.folderRenamed(tmpOldName, this));
 
-        for (MailboxEventListener mailboxEventListener : mailboxEventListeners) {
-            mailboxEventListener.folderRenamed(tmpOldName, this);
+            // TODO purge old folders, exists =false
+
+            // TODO notify children?
+            /*for (MailboxFolder mf: children) {
+            	renameFolder(mf.name); //do not really change name of children, just notify because parent changes
+            }*/
+        } finally {
+            writeLock.unlock();
         }
+    }
 
-        // TODO purge old folders, exists =false
+    /**
+     * Enables the inverted index over the subject, the addresses, the
+     * Message-ID and the given additional headers, which is used by
+     * {@link #search(SearchTerm, Message[])} to narrow down the messages
+     * to match. Calling this method again rebuilds the index.
+     */
+    public void enableSearchIndex(String... headerNames) {
+        writeLock.lock();
+        try {
+            checkExists();
+            headerIndex = new HeaderIndex(headerNames);
+            for (int i = 0; i < messages.size(); i++) {
+                headerIndex.add(messages.getAt(i));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
-        // TODO notify children?
-        /*for (MailboxFolder mf: children) {
-        	renameFolder(mf.name); //do not really change name of children, just notify because parent changes
-        }*/
+    public void disableSearchIndex() {
+        writeLock.lock();
+        try {
+            headerIndex = null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean isSearchIndexEnabled() {
+        readLock.lock();
+        try {
+            return headerIndex != null;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Keeps messages added from now on as raw RFC 822 bytes. Their headers
+     * are parsed on first access and the parsed headers of at most the
+     * given number of messages are cached, their content is a zero-copy
+     * substream of the raw bytes. Messages already in this folder are not
+     * converted.
+     */
+    public void enableRawStorage(int parsedHeaderCacheSize) {
+        writeLock.lock();
+        try {
+            checkExists();
+            rawStorage = new ParsedHeaderCache(parsedHeaderCacheSize);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Like {@link #enableRawStorage(int)} with a cache size of
+     * {@value ParsedHeaderCache#DEFAULT_CAPACITY}.
+     */
+    public void enableRawStorage() {
+        enableRawStorage(ParsedHeaderCache.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Stores messages added from now on fully parsed again.
+     */
+    public void disableRawStorage() {
+        writeLock.lock();
+        try {
+            rawStorage = null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean isRawStorageEnabled() {
+        readLock.lock();
+        try {
+            return rawStorage != null;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of messages in raw storage whose parsed headers
+     *         are cached
+     */
+    int getParsedHeaderCount() {
+        readLock.lock();
+        try {
+            return rawStorage != null ? rawStorage.size() : 0;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Compresses the contents of messages added from now on with Deflate.
+     * The contents are decompressed on demand, the given number of most
+     * recently decompressed contents is cached. Messages already in this
+     * folder are not converted. Calling this method again resets the
+     * statistics.
+     *
+     * @see #getCompressionStats()
+     */
+    public void enableCompression(int decodedCacheSize) {
+        writeLock.lock();
+        try {
+            checkExists();
+            codec = new ContentCodec(decodedCacheSize);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Like {@link #enableCompression(int)} with a cache size of
+     * {@value ContentCodec#DEFAULT_CACHE_SIZE}.
+     */
+    public void enableCompression() {
+        enableCompression(ContentCodec.DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Stores the contents of messages added from now on uncompressed
+     * again.
+     */
+    public void disableCompression() {
+        writeLock.lock();
+        try {
+            codec = null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean isCompressionEnabled() {
+        readLock.lock();
+        try {
+            return codec != null;
+        } finally {
+            readLock.unlock();
+        }
     }
 
+    /**
+     * @return the compression ratio and the decode latency of the
+     *         contents compressed since compression was enabled
+     */
+    public CompressionStats getCompressionStats() {
+        readLock.lock();
+        try {
+            return codec != null ? codec.getStats() : CompressionStats.EMPTY;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @param msgsToSearch the messages to restrict the search to, messages
+     *        are identified by their UID; {@code null} searches all messages
+     * @return the matching messages in UID order
+     */
     public Collection<Message> search(SearchTerm term, Message[] msgsToSearch) {
-        List<Message> result = new ArrayList<>();
-        List<Message> msgsToSearchL = new ArrayList<>();
+        if (term == null) {
+            return new ArrayList<>();
+        }
 
-        if (msgsToSearch != null) {
-            msgsToSearchL.addAll(Arrays.asList(msgsToSearch));
+        UidSet restriction = msgsToSearch == null ? null : uidsOf(msgsToSearch);
+
+        SearchPlan plan;
+        Collection<Message> candidates;
+        ForkJoinPool pool;
+        int threshold;
+        readLock.lock();
+        try {
+            checkExists();
+            plan = SearchPlan.create(term, messages, flagIndex, headerIndex);
+            UidSet uids = plan.candidates();
+            if (restriction != null) {
+                uids = uids == null ? restriction : uids.intersect(restriction);
+            }
+            // the snapshot matches the store while the lock is held
+            FolderSnapshot current = snapshot;
+            candidates = uids == null ? current.getMessages() : current.getByUids(uids);
+            pool = searchPool;
+            threshold = parallelSearchThreshold;
+        } finally {
+            readLock.unlock();
         }
 
-        for (Message msg : getMessages()) {
-            if (term != null && term.match(msg)) {
-                if (msgsToSearch == null || msgsToSearchL.contains(msg)) {
-                    result.add(msg);
-                }
+        // the candidates are a snapshot, match them without holding the lock
+        return plan.matches(candidates, pool, threshold);
+    }
+
+    /**
+     * Sorts the messages matching the given term (or all messages, if the
+     * term is {@code null}) as described by RFC 5256. The sort keys are
+     * extracted when a message is added.
+     */
+    public Collection<Message> getSortedMessages(SortTerm[] sortTerms, SearchTerm term)
+        throws MessagingException
+    {
+        Comparator<MockMessage> comparator = SortKey.comparator(sortTerms);
+        Collection<Message> msgs = term == null ? getMessages() : search(term, null);
+
+        MockMessage[] sorted = msgs.toArray(new MockMessage[0]);
+        Arrays.sort(sorted, comparator);
+        return Arrays.asList(sorted);
+    }
+
+    private static UidSet uidsOf(Message[] msgs) {
+        long[] uids = new long[msgs.length];
+        int count = 0;
+        for (Message msg : msgs) {
+            if (msg instanceof MockMessage) {
+                uids[count++] = ((MockMessage) msg).getMockid();
             }
         }
-        return result;
+        return UidSet.of(Arrays.copyOf(uids, count));
+    }
+
+    /**
+     * Lets {@link #search(SearchTerm, Message[])} match the messages in
+     * parallel on the given pool, if there are at least {@code threshold}
+     * messages to match.
+     */
+    public void enableParallelSearch(ForkJoinPool pool, int threshold) {
+        writeLock.lock();
+        try {
+            if (pool == null) {
+                throw new IllegalArgumentException("pool must not be null");
+            }
+            this.searchPool = pool;
+            this.parallelSearchThreshold = Math.max(threshold, 1);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void disableParallelSearch() {
+        writeLock.lock();
+        try {
+            searchPool = null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean isParallelSearchEnabled() {
+        readLock.lock();
+        try {
+            return searchPool != null;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Describes how {@link #search(SearchTerm, Message[])} would evaluate
+     * the given term: one line per node of the term tree with its relative
+     * cost and whether it is answered from an index or by matching the
+     * messages.
+     */
+    public String explainSearch(SearchTerm term) {
+        readLock.lock();
+        try {
+            checkExists();
+            return SearchPlan.create(term, messages, flagIndex, headerIndex).explain();
+        } finally {
+            readLock.unlock();
+        }
     }
 
     public void setSimulateError(boolean simulateError) {
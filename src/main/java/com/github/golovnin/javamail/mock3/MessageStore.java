@@ -0,0 +1,288 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+import jakarta.mail.Message;
+
+/**
+ * UID ordered message store backed by a sorted {@code long[]} of UIDs and
+ * a parallel array of messages. The index of a message in the store is its
+ * message number - 1. Lookups by UID are binary searches without boxing,
+ * lookups by message number are direct array accesses. The system flags of
+ * each message are kept in a third parallel array as bits defined by
+ * {@link FlagIndex}, the modification sequence of each message in a fourth
+ * one.
+ *
+ * <p>The store is not thread safe, the owning {@link MailboxFolder} guards
+ * all accesses. The UID and message arrays may be shared with immutable
+ * {@link FolderSnapshot}s: appending only writes behind the end of every
+ * snapshot, all other structural changes copy shared arrays first.
+ */
+final class MessageStore {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] uids;
+    private MockMessage[] messages;
+    private int[] flags;
+    private long[] modSeqs;
+    private int size;
+    private boolean shared;
+
+    MessageStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    MessageStore(int capacity) {
+        uids = new long[Math.max(capacity, 1)];
+        messages = new MockMessage[uids.length];
+        flags = new int[uids.length];
+        modSeqs = new long[uids.length];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int add(MockMessage message) {
+        return add(message, 0, 0);
+    }
+
+    /**
+     * @return the index of the added message
+     */
+    int add(MockMessage message, int flagBits, long modSeq) {
+        long uid = message.getMockid();
+        if (size == uids.length) {
+            grow();
+        }
+
+        if (size == 0 || uids[size - 1] < uid) {
+            // fast path: UIDs are allocated in ascending order
+            uids[size] = uid;
+            messages[size] = message;
+            flags[size] = flagBits;
+            modSeqs[size] = modSeq;
+            return size++;
+        }
+
+        int index = Arrays.binarySearch(uids, 0, size, uid);
+        if (index >= 0) {
+            throw new IllegalArgumentException("duplicate UID " + uid);
+        }
+        index = -(index + 1);
+        unshare();
+        System.arraycopy(uids, index, uids, index + 1, size - index);
+        System.arraycopy(messages, index, messages, index + 1, size - index);
+        System.arraycopy(flags, index, flags, index + 1, size - index);
+        System.arraycopy(modSeqs, index, modSeqs, index + 1, size - index);
+        uids[index] = uid;
+        messages[index] = message;
+        flags[index] = flagBits;
+        modSeqs[index] = modSeq;
+        size++;
+        return index;
+    }
+
+    private void grow() {
+        int capacity = uids.length + (uids.length >> 1) + 1;
+        uids = Arrays.copyOf(uids, capacity);
+        messages = Arrays.copyOf(messages, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        modSeqs = Arrays.copyOf(modSeqs, capacity);
+        shared = false;
+    }
+
+    private void unshare() {
+        if (shared) {
+            uids = uids.clone();
+            messages = messages.clone();
+            shared = false;
+        }
+    }
+
+    void clear() {
+        unshare();
+        Arrays.fill(messages, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Creates an immutable snapshot of the current messages sharing the
+     * arrays of this store.
+     */
+    FolderSnapshot snapshot(int[] flagCounts, long sizeInBytes,
+        long highestModSeq, long uidValidity)
+    {
+        shared = true;
+        return new FolderSnapshot(uids, messages, size, flagCounts,
+            sizeInBytes, highestModSeq, uidValidity);
+    }
+
+    /**
+     * @return the message with the given UID or {@code null}
+     */
+    MockMessage get(long uid) {
+        int index = indexOf(uid);
+        return index < 0 ? null : messages[index];
+    }
+
+    MockMessage getAt(int index) {
+        checkIndex(index);
+        return messages[index];
+    }
+
+    long uidAt(int index) {
+        checkIndex(index);
+        return uids[index];
+    }
+
+    int flagsAt(int index) {
+        checkIndex(index);
+        return flags[index];
+    }
+
+    void setFlagsAt(int index, int flagBits) {
+        checkIndex(index);
+        flags[index] = flagBits;
+    }
+
+    long modSeqAt(int index) {
+        checkIndex(index);
+        return modSeqs[index];
+    }
+
+    void setModSeqAt(int index, long modSeq) {
+        checkIndex(index);
+        modSeqs[index] = modSeq;
+    }
+
+    /**
+     * @return the index of the given UID or a negative value as described
+     *         in {@link Arrays#binarySearch(long[], int, int, long)}
+     */
+    int indexOf(long uid) {
+        return Arrays.binarySearch(uids, 0, size, uid);
+    }
+
+    /**
+     * Like {@link #indexOf(long)}, but searches only the messages starting
+     * at the given index.
+     */
+    int indexOf(long uid, int fromIndex) {
+        return Arrays.binarySearch(uids, fromIndex, size, uid);
+    }
+
+    /**
+     * @return the index of the first message with an UID greater than or
+     *         equal to the given UID
+     */
+    int lowerBound(long uid) {
+        int index = indexOf(uid);
+        return index < 0 ? -(index + 1) : index;
+    }
+
+    /**
+     * @return the index of the first message with an UID greater than the
+     *         given UID
+     */
+    int upperBound(long uid) {
+        int index = indexOf(uid);
+        return index < 0 ? -(index + 1) : index + 1;
+    }
+
+    UidSet uids() {
+        UidSet result = new UidSet();
+        for (int i = 0; i < size; i++) {
+            result.add(uids[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Copies the messages in the range {@code [from, to)} into a new list.
+     */
+    List<Message> copyRange(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException(
+                "range [" + from + ", " + to + ") out of bounds (" + size + ")");
+        }
+        return Arrays.asList(Arrays.copyOfRange(messages, from, to, Message[].class));
+    }
+
+    MockMessage remove(long uid) {
+        int index = indexOf(uid);
+        if (index < 0) {
+            return null;
+        }
+
+        unshare();
+        MockMessage message = messages[index];
+        int moved = size - index - 1;
+        System.arraycopy(uids, index + 1, uids, index, moved);
+        System.arraycopy(messages, index + 1, messages, index, moved);
+        System.arraycopy(flags, index + 1, flags, index, moved);
+        System.arraycopy(modSeqs, index + 1, modSeqs, index, moved);
+        messages[--size] = null;
+        return message;
+    }
+
+    /**
+     * Removes all messages matching the given filter in a single compaction
+     * pass.
+     *
+     * @return the number of removed messages
+     */
+    int removeIf(Predicate<? super MockMessage> filter) {
+        unshare();
+        int target = 0;
+        for (int i = 0; i < size; i++) {
+            if (!filter.test(messages[i])) {
+                uids[target] = uids[i];
+                messages[target] = messages[i];
+                flags[target] = flags[i];
+                modSeqs[target] = modSeqs[i];
+                target++;
+            }
+        }
+
+        int removed = size - target;
+        Arrays.fill(messages, target, size, null);
+        size = target;
+        return removed;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new ArrayIndexOutOfBoundsException(
+                "index (" + index + ") out of bounds (" + size + ")");
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import jakarta.mail.BodyPart;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMultipart;
+import jakarta.mail.internet.MimePart;
+import jakarta.mail.internet.MimePartDataSource;
+
+/**
+ * Compact descriptor of the MIME structure of a stored message, similar to
+ * the IMAP BODYSTRUCTURE: the content type, transfer encoding, size,
+ * disposition and file name of the message and, for multiparts, of all
+ * their parts. It is computed once when the message is added to its
+ * folder, so inspecting the structure never parses the content.
+ */
+public final class MimeStructure {
+
+    private final String contentType;
+    private final String encoding;
+    private final String disposition;
+    private final String fileName;
+    private final int size;
+    private final boolean multipart;
+    private final List<MimeStructure> parts;
+
+    private MimeStructure(MimePart part, boolean multipart,
+        List<MimeStructure> parts) throws MessagingException
+    {
+        this.contentType = part.getContentType();
+        this.encoding = part.getEncoding();
+        this.disposition = part.getDisposition();
+        this.fileName = part.getFileName();
+        this.size = part.getSize();
+        this.multipart = multipart;
+        this.parts = parts;
+    }
+
+    /**
+     * Computes the structure of the given part. Multiparts which cannot be
+     * parsed are described as single parts without any nested parts.
+     */
+    static MimeStructure of(MimePart part) throws MessagingException {
+        if (!part.isMimeType("multipart/*")) {
+            return new MimeStructure(part, false, Collections.emptyList());
+        }
+
+        List<MimeStructure> parts;
+        try {
+            // parse into a new multipart, the content of the part itself
+            // must not keep the parsed tree
+            MimeMultipart mp = new MimeMultipart(new MimePartDataSource(part));
+            int count = mp.getCount();
+            parts = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                BodyPart bp = mp.getBodyPart(i);
+                parts.add(of((MimePart) bp));
+            }
+        } catch (MessagingException e) {
+            return new MimeStructure(part, true, Collections.emptyList());
+        }
+        return new MimeStructure(part, true, Collections.unmodifiableList(parts));
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return the content transfer encoding or {@code null}
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * @return the disposition or {@code null}
+     */
+    public String getDisposition() {
+        return disposition;
+    }
+
+    /**
+     * @return the file name or {@code null}
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return the size of the encoded content in bytes or -1 if unknown
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isMultipart() {
+        return multipart;
+    }
+
+    /**
+     * @return the number of nested parts, 0 unless this is a multipart
+     */
+    public int getPartCount() {
+        return parts.size();
+    }
+
+    public MimeStructure getPart(int index) {
+        return parts.get(index);
+    }
+
+    /**
+     * @return an unmodifiable list of the nested parts
+     */
+    public List<MimeStructure> getParts() {
+        return parts;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("MimeStructure[")
+            .append(contentType).append(", size=").append(size);
+        if (disposition != null) {
+            sb.append(", disposition=").append(disposition);
+        }
+        if (fileName != null) {
+            sb.append(", fileName=").append(fileName);
+        }
+        if (multipart) {
+            sb.append(", parts=").append(parts);
+        }
+        return sb.append(']').toString();
+    }
+
+}
@@ -23,6 +23,8 @@ package com.github.golovnin.javamail.mock3;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import jakarta.mail.Address;
 import jakarta.mail.internet.AddressException;
 import jakarta.mail.internet.InternetAddress;
@@ -40,17 +42,38 @@ public final class MockMailbox {
         return get(new InternetAddress(address));
     }
 
+    /**
+     * Removes all mailboxes and deletes the message contents spilled to
+     * temporary files.
+     */
     public static void resetAll() {
         mailboxes.clear();
+        ContentStore.SHARED.clear();
+    }
+
+    /**
+     * Sets the content size in bytes above which messages added from now
+     * on keep their content in a temporary file instead of on the heap.
+     * The default {@link Long#MAX_VALUE} keeps all contents on the heap.
+     */
+    public static void setSpillThreshold(long threshold) {
+        ContentStore.SHARED.setSpillThreshold(threshold);
+    }
+
+    public static long getSpillThreshold() {
+        return ContentStore.SHARED.getSpillThreshold();
     }
 
     private final Address address;
     private final MailboxFolder inbox;
+    private final EventDispatcher dispatcher;
 
     private final MailboxFolder root = new MailboxFolder("", this, true);
+    private final AtomicLong sizeInBytes = new AtomicLong();
 
     private MockMailbox(final Address address) {
         this.address = address;
+        dispatcher = new EventDispatcher("mock-mailbox-events-" + address);
         inbox = root.addSpecialSubFolder("INBOX");
     }
 
@@ -69,6 +92,31 @@ public final class MockMailbox {
         return root;
     }
 
+    /**
+     * @return the RFC 822 size of all messages in all folders of this
+     *         mailbox
+     */
+    public long getSizeInBytes() {
+        return sizeInBytes.get();
+    }
+
+    void addSizeInBytes(long delta) {
+        sizeInBytes.addAndGet(delta);
+    }
+
+    <L> void dispatch(L[] listeners, Consumer<? super L> event) {
+        dispatcher.dispatch(listeners, event);
+    }
+
+    /**
+     * Waits until the listeners of all folders of this mailbox have been
+     * notified of the changes made so far. The listeners are called
+     * asynchronously and in order by a dispatcher thread of the mailbox.
+     */
+    public void awaitEvents() {
+        dispatcher.await();
+    }
+
     static boolean isInbox(String name) {
         return "inbox".equalsIgnoreCase(name);
     }
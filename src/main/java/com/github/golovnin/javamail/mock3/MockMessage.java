@@ -21,17 +21,29 @@
  */
 package com.github.golovnin.javamail.mock3;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
 
 import jakarta.activation.DataHandler;
 import jakarta.mail.Address;
 import jakarta.mail.Flags;
 import jakarta.mail.Folder;
+import jakarta.mail.Header;
 import jakarta.mail.IllegalWriteException;
 import jakarta.mail.Message;
 import jakarta.mail.MessagingException;
 import jakarta.mail.Multipart;
+import jakarta.mail.internet.InternetHeaders;
 import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.util.SharedByteArrayInputStream;
 
 public final class MockMessage extends MimeMessage implements
     Comparable<MockMessage>
@@ -42,27 +54,358 @@ public final class MockMessage extends MimeMessage implements
     }
 
     private final MailboxFolder mbf;
+    private final MockMessage stored;
     private final long mockid;
     private final FlagChangeListener flagChangeListener;
     private final Folder folder;
+    private long rfc822Size = -1;
+    // the INTERNALDATE, i.e. when the message was added to its folder
+    private final long receivedDate;
+    private SortKey sortKey;
+    // the sorted user flags as of the last modification sequence of this
+    // stored message, guarded by the lock of its folder
+    private String[] indexedUserFlags;
+    private MimeStructure structure;
+    private boolean structurePending;
+
+    // raw storage: the header block in RFC 822 format, parsed on demand
+    // into the cache of the folder; the content shares the raw bytes,
+    // which are kept until the content has been shared
+    private byte[] rawHeaders;
+    private final ParsedHeaderCache headerCache;
+    private byte[] raw;
+    private int rawBodyOffset;
+
+    // the shared content of a stored message, if any, compressed by the
+    // codec of the folder if there is one
+    private ContentStore.Entry sharedContent;
+    private boolean contentReleased;
+    private ContentCodec codec;
+    private int decodedLength;
+
+    // views of protocol folders: the tracker of the folder and the items
+    // loaded so far, see FetchTracker
+    private final FetchTracker fetchTracker;
+    private int loadedItems;
+    private Set<String> loadedHeaders;
+
+    /**
+     * Creates a view of the given message bound to the given folder. The
+     * view shares the headers and the content of the stored message, which
+     * are never modified once the message has been added, and delegates
+     * all flag accesses to it. Creating a view does not copy the message.
+     */
+    MockMessage(Message source, Folder folder, int msgnum)
+        throws MessagingException
+    {
+        this(source, folder, msgnum, null);
+    }
 
-    MockMessage(Message source, Folder folder) throws MessagingException {
-        super((MimeMessage) source);
-        this.mockid = ((MockMessage) source).mockid;
-        this.flagChangeListener = ((MockMessage) source).flagChangeListener;
-        this.mbf = ((MockMessage) source).mbf;
+    /**
+     * Like {@link #MockMessage(Message, Folder, int)}, but loads of the
+     * items of the view are tracked by the given tracker unless it is
+     * {@code null}.
+     */
+    MockMessage(Message source, Folder folder, int msgnum,
+        FetchTracker fetchTracker) throws MessagingException
+    {
+        super(folder, msgnum);
+        MockMessage mockMessage = (MockMessage) source;
+        this.stored = mockMessage.stored != null ? mockMessage.stored : mockMessage;
+        this.mockid = mockMessage.mockid;
+        this.flagChangeListener = null;
+        this.mbf = mockMessage.mbf;
         this.folder = folder;
-        setMessageNumber(source.getMessageNumber());
+        this.receivedDate = mockMessage.receivedDate;
+        this.headers = stored.headers;
+        this.content = stored.content;
+        this.contentStream = stored.contentStream;
+        this.headerCache = null;
+        this.fetchTracker = fetchTracker;
     }
 
     MockMessage(MimeMessage source, long mockid, MailboxFolder mbf,
         FlagChangeListener flagChangeListener) throws MessagingException
     {
         super(source);
+        this.stored = null;
         this.mockid = mockid;
         this.flagChangeListener = flagChangeListener;
         this.mbf = mbf;
         this.folder = null;
+        this.receivedDate = receivedDate(source);
+        this.headerCache = null;
+        this.fetchTracker = null;
+    }
+
+    /**
+     * Creates a message kept in raw storage: the RFC 822 bytes of the
+     * source are kept as they are, the content is a zero-copy substream
+     * of them and the headers are parsed on first access only, as is the
+     * MIME structure.
+     */
+    MockMessage(MimeMessage source, long mockid, MailboxFolder mbf,
+        FlagChangeListener flagChangeListener, ParsedHeaderCache headerCache)
+        throws MessagingException
+    {
+        super(source.getSession());
+        this.stored = null;
+        this.mockid = mockid;
+        this.flagChangeListener = flagChangeListener;
+        this.mbf = mbf;
+        this.folder = null;
+        this.receivedDate = receivedDate(source);
+        this.headerCache = headerCache;
+        this.fetchTracker = null;
+
+        Flags sourceFlags = source.getFlags();
+        this.flags = sourceFlags != null ? sourceFlags : new Flags();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(source.getSize(), 32));
+        try {
+            source.writeTo(out);
+        } catch (IOException e) {
+            throw new MessagingException("cannot copy message", e);
+        }
+        byte[] raw = out.toByteArray();
+        int bodyOffset = bodyOffset(raw);
+        this.rawHeaders = Arrays.copyOf(raw, bodyOffset);
+        this.raw = raw;
+        this.rawBodyOffset = bodyOffset;
+        this.contentStream = new SharedByteArrayInputStream(raw, bodyOffset, raw.length - bodyOffset);
+        this.structurePending = true;
+        this.headers = null;
+        this.modified = false;
+        this.saved = true;
+    }
+
+    /**
+     * @return the received date of the given message, if it has one, or
+     *         else the current time
+     */
+    private static long receivedDate(MimeMessage source)
+        throws MessagingException
+    {
+        Date received = source.getReceivedDate();
+        return received != null ? received.getTime() : System.currentTimeMillis();
+    }
+
+    /**
+     * @return the offset of the content, i.e. the offset after the first
+     *         empty line, or the length of the message if there is none
+     */
+    private static int bodyOffset(byte[] raw) {
+        int lineStart = 0;
+        for (int i = 0; i < raw.length; i++) {
+            byte b = raw[i];
+            if (b != '\r' && b != '\n') {
+                continue;
+            }
+            boolean empty = i == lineStart;
+            if (b == '\r' && i + 1 < raw.length && raw[i + 1] == '\n') {
+                i++;
+            }
+            if (empty) {
+                return i + 1;
+            }
+            lineStart = i + 1;
+        }
+        return raw.length;
+    }
+
+    /**
+     * @return the offset of the empty line ending the given header block,
+     *         or its length if there is none
+     */
+    private static int emptyLineOffset(byte[] header) {
+        int end = header.length;
+        if (end > 0 && header[end - 1] == '\n') {
+            int lineStart = end > 1 && header[end - 2] == '\r' ? end - 2 : end - 1;
+            if (lineStart == 0 || header[lineStart - 1] == '\n') {
+                return lineStart;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Replaces the content of this stored message by the identical content
+     * kept in the given store, compressed by the given codec unless it is
+     * {@code null}.
+     */
+    void shareContent(ContentStore store, ContentCodec codec)
+        throws MessagingException
+    {
+        byte[] bytes;
+        int offset = 0;
+        int length;
+        if (raw != null) {
+            // share the raw bytes as they are unless they are compressed
+            bytes = raw;
+            offset = rawBodyOffset;
+            raw = null;
+        } else if (content != null) {
+            bytes = content;
+        } else {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(getSize(), 32));
+            try (InputStream in = getContentStream()) {
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    out.write(buf, 0, n);
+                }
+            } catch (IOException e) {
+                throw new MessagingException("cannot read content", e);
+            }
+            bytes = out.toByteArray();
+        }
+        length = bytes.length - offset;
+
+        if (codec != null) {
+            decodedLength = length;
+            bytes = codec.encode(offset == 0 ? bytes : Arrays.copyOfRange(bytes, offset, bytes.length));
+            offset = 0;
+            length = bytes.length;
+        }
+        try {
+            sharedContent = store.acquire(bytes, offset, length);
+        } catch (IOException e) {
+            throw new MessagingException("cannot store content", e);
+        }
+        this.codec = codec;
+        content = null;
+        // compressed contents are decoded on demand by getContentStream
+        contentStream = codec == null ? sharedContent.stream() : null;
+    }
+
+    /**
+     * Releases the shared content once this message left its folder. The
+     * content stays readable, a file it was spilled to is deleted with the
+     * last reference.
+     */
+    void releaseContent(ContentStore store) {
+        if (sharedContent != null && !contentReleased) {
+            contentReleased = true;
+            store.release(sharedContent);
+        }
+    }
+
+    /**
+     * @return the stored message of this view or this message itself
+     */
+    MockMessage stored() {
+        return stored != null ? stored : this;
+    }
+
+    /**
+     * Loads the given items of this view in a batch, called by
+     * {@link FetchTracker#fetch}.
+     *
+     * @return {@code false} if this is not a view of the folder of the
+     *         given tracker
+     */
+    synchronized boolean fetch(FetchTracker tracker, int items,
+        String[] headerNames) throws MessagingException
+    {
+        if (tracker != fetchTracker) {
+            return false;
+        }
+        loadedItems |= items;
+        for (String name : headerNames) {
+            if (loadedHeaders == null) {
+                loadedHeaders = new HashSet<>();
+            }
+            loadedHeaders.add(FetchTracker.key(name));
+        }
+
+        // materialize the requested items of the stored message now
+        if ((items & ~(FetchTracker.FLAGS | FetchTracker.SIZE)) != 0 || headerNames.length > 0) {
+            stored.headers();
+        }
+        if ((items & FetchTracker.CONTENT) != 0 && stored.codec != null) {
+            try {
+                stored.codec.decode(stored.sharedContent, stored.decodedLength);
+            } catch (IOException e) {
+                throw new MessagingException("cannot decode content", e);
+            }
+        }
+        return true;
+    }
+
+    private void load(int item) {
+        if (fetchTracker != null && markLoaded(item)) {
+            fetchTracker.lazyLoad(item);
+        }
+    }
+
+    private synchronized boolean markLoaded(int item) {
+        int loaded = loadedItems;
+        if ((loaded & FetchTracker.HEADERS) != 0) {
+            loaded |= FetchTracker.ENVELOPE | FetchTracker.CONTENT_INFO;
+        }
+        if ((loaded & item) != 0) {
+            return false;
+        }
+        loadedItems |= item;
+        return true;
+    }
+
+    private void loadHeader(String name) {
+        if (fetchTracker == null) {
+            return;
+        }
+        int item = FetchTracker.itemOf(name);
+        if (item != FetchTracker.HEADERS) {
+            load(item);
+        } else if (markHeaderLoaded(name)) {
+            fetchTracker.lazyLoad(item);
+        }
+    }
+
+    private synchronized boolean markHeaderLoaded(String name) {
+        if ((loadedItems & FetchTracker.HEADERS) != 0) {
+            return false;
+        }
+        if (loadedHeaders == null) {
+            loadedHeaders = new HashSet<>();
+        }
+        return loadedHeaders.add(FetchTracker.key(name));
+    }
+
+    @Override
+    protected InputStream getContentStream() throws MessagingException {
+        load(FetchTracker.CONTENT);
+        MockMessage source = stored != null ? stored : this;
+        if (source.codec == null) {
+            return super.getContentStream();
+        }
+        try {
+            return new SharedByteArrayInputStream(
+                source.codec.decode(source.sharedContent, source.decodedLength));
+        } catch (IOException e) {
+            throw new MessagingException("cannot decode content", e);
+        }
+    }
+
+    @Override
+    public int getSize() throws MessagingException {
+        load(FetchTracker.SIZE);
+        MockMessage source = stored != null ? stored : this;
+        return source.codec != null ? source.decodedLength : super.getSize();
+    }
+
+    /**
+     * Parses the raw header block, called by the header cache.
+     */
+    InternetHeaders parseHeaders() throws MessagingException {
+        return new InternetHeaders(new ByteArrayInputStream(rawHeaders));
+    }
+
+    private InternetHeaders headers() throws MessagingException {
+        if (stored != null) {
+            return stored.headers();
+        }
+        return headerCache != null ? headerCache.get(this) : headers;
     }
 
     @Override
@@ -106,6 +449,12 @@ public final class MockMessage extends MimeMessage implements
         return Long.compare(this.mockid, o.mockid);
     }
 
+    @Override
+    public Flags getFlags() throws MessagingException {
+        load(FetchTracker.FLAGS);
+        return stored != null ? stored.getFlags() : super.getFlags();
+    }
+
     @Override
     public synchronized Folder getFolder() {
         if (folder == null) {
@@ -115,10 +464,217 @@ public final class MockMessage extends MimeMessage implements
         }
     }
 
+    @Override
+    public String[] getHeader(String name) throws MessagingException {
+        loadHeader(name);
+        return headers().getHeader(name);
+    }
+
+    @Override
+    public String getHeader(String name, String delimiter)
+        throws MessagingException
+    {
+        loadHeader(name);
+        return headers().getHeader(name, delimiter);
+    }
+
+    @Override
+    public Enumeration<Header> getAllHeaders() throws MessagingException {
+        load(FetchTracker.HEADERS);
+        return headers().getAllHeaders();
+    }
+
+    @Override
+    public Enumeration<Header> getMatchingHeaders(String[] names)
+        throws MessagingException
+    {
+        for (String name : names) {
+            loadHeader(name);
+        }
+        return headers().getMatchingHeaders(names);
+    }
+
+    @Override
+    public Enumeration<Header> getNonMatchingHeaders(String[] names)
+        throws MessagingException
+    {
+        load(FetchTracker.HEADERS);
+        return headers().getNonMatchingHeaders(names);
+    }
+
+    @Override
+    public Enumeration<String> getAllHeaderLines() throws MessagingException {
+        load(FetchTracker.HEADERS);
+        return headers().getAllHeaderLines();
+    }
+
+    @Override
+    public Enumeration<String> getMatchingHeaderLines(String[] names)
+        throws MessagingException
+    {
+        for (String name : names) {
+            loadHeader(name);
+        }
+        return headers().getMatchingHeaderLines(names);
+    }
+
+    @Override
+    public Enumeration<String> getNonMatchingHeaderLines(String[] names)
+        throws MessagingException
+    {
+        load(FetchTracker.HEADERS);
+        return headers().getNonMatchingHeaderLines(names);
+    }
+
     public long getMockid() {
         return mockid;
     }
 
+    /**
+     * @return the current modification sequence of this message in its
+     *         folder or -1 if it is not stored in a folder
+     */
+    public long getModSeq() {
+        return mbf == null ? -1 : mbf.getModSeq(mockid);
+    }
+
+    /**
+     * @return the INTERNALDATE of this message, i.e. the received date of
+     *         the message it was added as or else the time it was added
+     */
+    @Override
+    public Date getReceivedDate() throws MessagingException {
+        load(FetchTracker.ENVELOPE);
+        return new Date(receivedDate);
+    }
+
+    /**
+     * @return the size of this message in RFC 822 format, i.e. the size of
+     *         the header lines plus the size of the content
+     */
+    public synchronized long getRfc822Size() throws MessagingException {
+        load(FetchTracker.SIZE);
+        if (stored != null) {
+            return stored.getRfc822Size();
+        }
+        if (rfc822Size < 0 && headerCache != null) {
+            // the raw header block ends with the empty line
+            rfc822Size = rawHeaders.length + Math.max(getSize(), 0);
+        } else if (rfc822Size < 0) {
+            long size = 2; // empty line between the header and the content
+            Enumeration<String> lines = getAllHeaderLines();
+            while (lines.hasMoreElements()) {
+                size += lines.nextElement().length() + 2;
+            }
+            size += Math.max(getSize(), 0);
+            rfc822Size = size;
+        }
+        return rfc822Size;
+    }
+
+    /**
+     * Computes the MIME structure of this stored message, called while
+     * adding it to its folder.
+     */
+    void computeStructure() throws MessagingException {
+        structure = MimeStructure.of(this);
+    }
+
+    /**
+     * @return the MIME structure of this message computed when it was
+     *         added to its folder, or on first access if it is kept in raw
+     *         storage, {@code null} if it has not been added
+     */
+    public MimeStructure getStructure() throws MessagingException {
+        load(FetchTracker.CONTENT_INFO);
+        return structure();
+    }
+
+    private MimeStructure structure() throws MessagingException {
+        MockMessage source = stored();
+        synchronized (source) {
+            if (source.structurePending) {
+                // the structure is read through the overrides below, which
+                // fall back to the headers while it is computed
+                source.structurePending = false;
+                try {
+                    source.structure = MimeStructure.of(source);
+                } catch (MessagingException | RuntimeException e) {
+                    source.structurePending = true;
+                    throw e;
+                }
+            }
+            return source.structure;
+        }
+    }
+
+    @Override
+    public String getContentType() throws MessagingException {
+        MimeStructure s = structure();
+        if (s == null) {
+            return super.getContentType();
+        }
+        load(FetchTracker.CONTENT_INFO);
+        return s.getContentType();
+    }
+
+    @Override
+    public String getEncoding() throws MessagingException {
+        MimeStructure s = structure();
+        if (s == null) {
+            return super.getEncoding();
+        }
+        load(FetchTracker.CONTENT_INFO);
+        return s.getEncoding();
+    }
+
+    @Override
+    public String getDisposition() throws MessagingException {
+        MimeStructure s = structure();
+        if (s == null) {
+            return super.getDisposition();
+        }
+        load(FetchTracker.CONTENT_INFO);
+        return s.getDisposition();
+    }
+
+    @Override
+    public String getFileName() throws MessagingException {
+        MimeStructure s = structure();
+        if (s == null) {
+            return super.getFileName();
+        }
+        load(FetchTracker.CONTENT_INFO);
+        return s.getFileName();
+    }
+
+    String[] getIndexedUserFlags() {
+        return indexedUserFlags;
+    }
+
+    void setIndexedUserFlags(String[] userFlags) {
+        indexedUserFlags = userFlags;
+    }
+
+    /**
+     * @return the SORT keys of this message, extracted on first use
+     */
+    synchronized SortKey getSortKey() {
+        if (stored != null) {
+            return stored.getSortKey();
+        }
+        if (sortKey == null) {
+            sortKey = SortKey.of(this);
+        }
+        return sortKey;
+    }
+
+    @Override
+    public boolean isSet(Flags.Flag flag) throws MessagingException {
+        load(FetchTracker.FLAGS);
+        return stored != null ? stored.isSet(flag) : super.isSet(flag);
+    }
+
     @Override
     public void removeHeader(String name) throws MessagingException {
         assertReadOnlyMessage();
@@ -187,9 +743,14 @@ public final class MockMessage extends MimeMessage implements
     }
 
     @Override
-    public synchronized void setFlags(Flags flag, boolean set)
-        throws MessagingException
-    {
+    public void setFlags(Flags flag, boolean set) throws MessagingException {
+        if (stored != null) {
+            stored.setFlags(flag, set);
+            return;
+        }
+
+        // the listener must not be called while holding the lock of this
+        // message, otherwise it may deadlock with the lock of the folder
         super.setFlags(flag, set);
 
         if (flagChangeListener != null) {
@@ -254,7 +815,23 @@ public final class MockMessage extends MimeMessage implements
     }
 
     void setSpecialHeader(String name, String value) throws MessagingException {
-        super.addHeader(name, value);
+        if (headerCache == null) {
+            super.addHeader(name, value);
+        } else {
+            // splice the header line into the raw header block before its
+            // empty line, without parsing the headers
+            byte[] line = (name + ": " + value + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+            int end = emptyLineOffset(rawHeaders);
+            byte[] spliced = new byte[end + line.length + 2];
+            System.arraycopy(rawHeaders, 0, spliced, 0, end);
+            System.arraycopy(line, 0, spliced, end, line.length);
+            spliced[spliced.length - 2] = '\r';
+            spliced[spliced.length - 1] = '\n';
+            rawHeaders = spliced;
+            headerCache.remove(this);
+        }
+        rfc822Size = -1;
+        sortKey = null;
     }
 
     @Override
@@ -66,7 +66,7 @@ public class MockTransport extends Transport {
 
             }
 
-            mailbox.getInbox().add(new MimeMessage((MimeMessage) msg));
+            mailbox.getInbox().add((MimeMessage) msg);
             notifyTransportListeners(TransportEvent.MESSAGE_DELIVERED, addresses,
                 EMPTY, EMPTY, msg);
         }
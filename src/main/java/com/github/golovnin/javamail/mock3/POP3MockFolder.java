@@ -23,13 +23,13 @@ package com.github.golovnin.javamail.mock3;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.UUID;
 
 import jakarta.mail.FetchProfile;
 import jakarta.mail.FolderClosedException;
 import jakarta.mail.Message;
+import jakarta.mail.MessageRemovedException;
 import jakarta.mail.MessagingException;
 import jakarta.mail.MethodNotSupportedException;
 import jakarta.mail.event.ConnectionEvent;
@@ -43,6 +43,10 @@ public class POP3MockFolder extends POP3MockFolder0 implements
 
     private final MailboxFolder mailboxFolder;
     private final UUID objectId = UUID.randomUUID();
+    // the maildrop of the session, fixed from open until close (RFC 1939)
+    private final SessionSequence sequence = new SessionSequence();
+    private int[] sizes = new int[0];
+    private final FetchTracker fetchTracker = new FetchTracker();
     private volatile boolean opened;
 
     protected POP3MockFolder(POP3MockStore store, MailboxFolder mailboxFolder) {
@@ -72,13 +76,23 @@ public class POP3MockFolder extends POP3MockFolder0 implements
         }
 
         opened = false;
+        sequence.clear();
+        sizes = new int[0];
 
         notifyConnectionListeners(ConnectionEvent.CLOSED);
     }
 
     @Override
     public void fetch(Message[] msgs, FetchProfile fp) throws MessagingException {
-        // just do nothing
+        fetchTracker.fetch(msgs, fp);
+    }
+
+    /**
+     * @return the statistics of the message items loaded through this
+     *         folder
+     */
+    public FetchStats getFetchStats() {
+        return fetchTracker.getStats();
     }
 
     @Override
@@ -99,80 +113,83 @@ public class POP3MockFolder extends POP3MockFolder0 implements
     @Override
     public synchronized Message getMessage(int msgnum) throws MessagingException {
         checkOpened();
-        return new MockMessage(mailboxFolder.getByMsgNum(msgnum), this);
+        long uid = sequence.uidAt(msgnum);
+        Message message = mailboxFolder.getById(uid);
+        if (message == null) {
+            throw new MessageRemovedException("message " + msgnum
+                + " (UID " + uid + ") has been expunged");
+        }
+        return new MockMessage(message, this, msgnum, fetchTracker);
     }
 
     @Override
     public synchronized int getMessageCount() throws MessagingException {
-        return mailboxFolder.getMessageCount();
+        return opened ? sequence.size() : mailboxFolder.getMessageCount();
     }
 
     @Override
     public synchronized Message[] getMessages() throws MessagingException {
         checkOpened();
-        List<Message> messages = new ArrayList<>();
-        for (int i = 1; i <= mailboxFolder.getMessageCount(); i++) {
-            Message m = mailboxFolder.getByMsgNum(i);
-            messages.add(new MockMessage(m, this));
-        }
-        return messages.toArray(new Message[messages.size()]);
+        return getMessages(1, sequence.size());
     }
 
     @Override
     public synchronized Message[] getMessages(int low, int high) throws MessagingException {
         checkOpened();
-        List<Message> messages = new ArrayList<>();
-        for (int i = low; i <= high; i++) {
-            Message m = mailboxFolder.getByMsgNum(i);
-            messages.add(new MockMessage(m, this));
+        if (low < 1 || high > sequence.size() || low > high + 1) {
+            throw new IndexOutOfBoundsException("message numbers " + low
+                + " to " + high + " out of range");
+        }
+
+        Message[] msgs = new Message[high - low + 1];
+        for (int msgnum = low; msgnum <= high; msgnum++) {
+            msgs[msgnum - low] = wrap(msgnum);
         }
-        return messages.toArray(new Message[messages.size()]);
+        return msgs;
     }
 
     @Override
     public synchronized Message[] getMessages(int[] msgnums) throws MessagingException {
         checkOpened();
 
-        List<Integer> idlist = new ArrayList<>();
-        for (int value : msgnums) {
-            idlist.add(value);
-        }
-
-        List<Message> messages = new ArrayList<>();
+        int[] sorted = msgnums.clone();
+        Arrays.sort(sorted);
 
-        for (int i = 1; i <= mailboxFolder.getMessageCount(); i++) {
-            if (!idlist.contains(new Integer(i))) {
+        int count = sequence.size();
+        Message[] msgs = new Message[sorted.length];
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            int msgnum = sorted[i];
+            if (msgnum < 1 || msgnum > count || i > 0 && msgnum == sorted[i - 1]) {
                 continue;
             }
-
-            Message m = mailboxFolder.getByMsgNum(i);
-            messages.add(new MockMessage(m, this));
+            msgs[n++] = wrap(msgnum);
         }
-        return messages.toArray(new Message[messages.size()]);
+        return Arrays.copyOf(msgs, n);
     }
 
     @Override
     public synchronized int getSize() throws MessagingException {
         checkOpened();
-        return mailboxFolder.getSizeInBytes();
+        long size = 0;
+        for (int messageSize : sizes) {
+            size += messageSize;
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
     }
 
     @Override
     public synchronized int[] getSizes() throws MessagingException {
         checkOpened();
-        int count = getMessageCount();
-        int[] sizes = new int[count];
-
-        for (int i = 1; i <= count; i++) {
-            sizes[i - 1] = getMessage(i).getSize();
-        }
-
-        return sizes;
+        return sizes.clone();
     }
 
     @Override
     public synchronized String getUID(Message msg) throws MessagingException {
         checkOpened();
+        if (msg instanceof ExpungedMessage) {
+            return String.valueOf(((ExpungedMessage) msg).getUid());
+        }
         return String.valueOf(((MockMessage) msg).getMockid());
     }
 
@@ -203,13 +220,22 @@ public class POP3MockFolder extends POP3MockFolder0 implements
 
     @Override
     public void messageExpunged(MailboxFolder mf, MockMessage msg, boolean removed) {
-        // not valid for pop3
-
+        // the maildrop stays as it was when the folder was opened, the
+        // message is reported as expunged on access (RFC 1939)
     }
 
     @Override
     public synchronized void open(int mode) throws MessagingException {
         checkClosed();
+        // new messages are not visible until the folder is opened again
+        mailboxFolder.resetSequence(sequence);
+        sizes = new int[sequence.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            MockMessage message = (MockMessage) mailboxFolder.getById(sequence.uidAt(i + 1));
+            if (message != null) {
+                sizes[i] = (int) Math.min(message.getRfc822Size(), Integer.MAX_VALUE);
+            }
+        }
         opened = true;
         notifyConnectionListeners(ConnectionEvent.OPENED);
     }
@@ -219,4 +245,13 @@ public class POP3MockFolder extends POP3MockFolder0 implements
         // not valid for pop3
     }
 
+    private Message wrap(int msgnum) throws MessagingException {
+        long uid = sequence.uidAt(msgnum);
+        Message message = mailboxFolder.getById(uid);
+        if (message == null) {
+            return new ExpungedMessage(this, msgnum, uid);
+        }
+        return new MockMessage(message, this, msgnum, fetchTracker);
+    }
+
 }
@@ -0,0 +1,86 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetHeaders;
+
+/**
+ * Bounded LRU cache of the parsed headers of messages kept in raw
+ * storage. Evicted headers are parsed again from the raw bytes of the
+ * message on the next access.
+ */
+final class ParsedHeaderCache {
+
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private final Map<MockMessage, InternetHeaders> cache;
+
+    ParsedHeaderCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        cache = new LinkedHashMap<MockMessage, InternetHeaders>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<MockMessage, InternetHeaders> eldest) {
+                return size() > capacity;
+            }
+
+        };
+    }
+
+    InternetHeaders get(MockMessage msg) throws MessagingException {
+        InternetHeaders headers;
+        synchronized (this) {
+            headers = cache.get(msg);
+        }
+        if (headers != null) {
+            return headers;
+        }
+
+        // parse without holding the lock, a concurrent parse of the same
+        // message just loses
+        headers = msg.parseHeaders();
+        synchronized (this) {
+            InternetHeaders existing = cache.putIfAbsent(msg, headers);
+            return existing != null ? existing : headers;
+        }
+    }
+
+    synchronized void remove(MockMessage msg) {
+        cache.remove(msg);
+    }
+
+    synchronized void clear() {
+        cache.clear();
+    }
+
+    synchronized int size() {
+        return cache.size();
+    }
+
+}
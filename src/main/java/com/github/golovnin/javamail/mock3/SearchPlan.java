@@ -0,0 +1,594 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import jakarta.mail.Flags;
+import jakarta.mail.Message;
+import jakarta.mail.search.AddressTerm;
+import jakarta.mail.search.AndTerm;
+import jakarta.mail.search.BodyTerm;
+import jakarta.mail.search.ComparisonTerm;
+import jakarta.mail.search.DateTerm;
+import jakarta.mail.search.FlagTerm;
+import jakarta.mail.search.HeaderTerm;
+import jakarta.mail.search.IntegerComparisonTerm;
+import jakarta.mail.search.MessageNumberTerm;
+import jakarta.mail.search.NotTerm;
+import jakarta.mail.search.OrTerm;
+import jakarta.mail.search.SearchTerm;
+import jakarta.mail.search.SizeTerm;
+import jakarta.mail.search.StringTerm;
+
+/**
+ * Execution plan of a {@link SearchTerm} for a {@link MailboxFolder}.
+ *
+ * <p>The planner decomposes the term tree, answers flag terms from the
+ * {@link FlagIndex} and header terms from the {@link HeaderIndex} (if
+ * enabled) and intersects or unites the resulting candidate sets. The
+ * remaining terms are matched against the candidates only, cheapest
+ * first, so that e.g. a {@link BodyTerm} is evaluated only for messages
+ * which passed all other parts of an {@link AndTerm}.
+ *
+ * <p>A plan must be created and its candidates computed while holding
+ * the lock of the folder.
+ */
+final class SearchPlan {
+
+    // number of messages matched sequentially by a parallel search task
+    private static final int PARALLEL_CHUNK = 256;
+
+    // relative costs of matching a term against a single message
+    private static final int COST_FLAGS = 1;
+    private static final int COST_NUMBER = 1;
+    private static final int COST_SIZE = 2;
+    private static final int COST_DATE = 3;
+    private static final int COST_HEADER = 4;
+    private static final int COST_UNKNOWN = 8;
+    private static final int COST_BODY = 16;
+
+    private static final Comparator<Node> BY_COST =
+        Comparator.comparingInt(Node::cost);
+
+    private final Node root;
+
+    private SearchPlan(Node root) {
+        this.root = root;
+    }
+
+    static SearchPlan create(SearchTerm term, MessageStore store,
+        FlagIndex flagIndex, HeaderIndex headerIndex)
+    {
+        return new SearchPlan(
+            new Planner(store, flagIndex, headerIndex).plan(term));
+    }
+
+    /**
+     * @return the UIDs of the messages which may match or {@code null} if
+     *         all messages of the folder must be matched
+     */
+    UidSet candidates() {
+        return root.indexed() ? root.candidates() : null;
+    }
+
+    /**
+     * Matches a candidate against the parts of the term which were not
+     * answered exactly by the indexes.
+     */
+    boolean matches(Message msg) {
+        return root.indexed() ? root.verify(msg) : root.match(msg);
+    }
+
+    /**
+     * Matches the given candidates and returns the matching messages in
+     * the order of the candidates. If a pool is given and there are at
+     * least {@code threshold} candidates, they are partitioned and matched
+     * in parallel on the pool.
+     */
+    List<Message> matches(Collection<Message> candidates, ForkJoinPool pool,
+        int threshold)
+    {
+        Message[] msgs = candidates.toArray(new Message[0]);
+        if (pool == null || msgs.length < threshold) {
+            return matches(msgs, 0, msgs.length);
+        }
+        return pool.invoke(new MatchTask(msgs, 0, msgs.length));
+    }
+
+    private List<Message> matches(Message[] msgs, int from, int to) {
+        List<Message> result = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            if (matches(msgs[i])) {
+                result.add(msgs[i]);
+            }
+        }
+        return result;
+    }
+
+    String explain() {
+        StringBuilder sb = new StringBuilder();
+        root.describe(sb, 0);
+        return sb.toString();
+    }
+
+    private final class MatchTask extends RecursiveTask<List<Message>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Message[] msgs;
+        private final int from;
+        private final int to;
+
+        MatchTask(Message[] msgs, int from, int to) {
+            this.msgs = msgs;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Message> compute() {
+            if (to - from <= PARALLEL_CHUNK) {
+                return matches(msgs, from, to);
+            }
+
+            int middle = (from + to) >>> 1;
+            MatchTask left = new MatchTask(msgs, from, middle);
+            left.fork();
+            List<Message> right = new MatchTask(msgs, middle, to).compute();
+            List<Message> result = left.join();
+            result.addAll(right);
+            return result;
+        }
+
+    }
+
+    private static final class Planner {
+
+        private final MessageStore store;
+        private final FlagIndex flagIndex;
+        private final HeaderIndex headerIndex;
+
+        Planner(MessageStore store, FlagIndex flagIndex, HeaderIndex headerIndex) {
+            this.store = store;
+            this.flagIndex = flagIndex;
+            this.headerIndex = headerIndex;
+        }
+
+        Node plan(SearchTerm term) {
+            if (term instanceof AndTerm) {
+                return new AndNode(term, plan(((AndTerm) term).getTerms()));
+            }
+
+            if (term instanceof OrTerm) {
+                return new OrNode(term, plan(((OrTerm) term).getTerms()));
+            }
+
+            if (term instanceof NotTerm) {
+                return new NotNode(term, plan(((NotTerm) term).getTerm()), store);
+            }
+
+            if (term instanceof FlagTerm) {
+                return new FlagNode((FlagTerm) term, store, flagIndex);
+            }
+
+            if (headerIndex != null) {
+                UidSet candidates = headerIndex.candidates(term);
+                if (candidates != null) {
+                    return new IndexedNode(term, candidates);
+                }
+            }
+
+            return new Node(term, costOf(term));
+        }
+
+        private List<Node> plan(SearchTerm[] terms) {
+            List<Node> nodes = new ArrayList<>(terms.length);
+            for (SearchTerm t : terms) {
+                nodes.add(plan(t));
+            }
+            nodes.sort(BY_COST);
+            return nodes;
+        }
+
+        private static int costOf(SearchTerm term) {
+            if (term instanceof MessageNumberTerm) {
+                return COST_NUMBER;
+            }
+            if (term instanceof SizeTerm) {
+                return COST_SIZE;
+            }
+            if (term instanceof DateTerm) {
+                return COST_DATE;
+            }
+            if (term instanceof BodyTerm) {
+                return COST_BODY;
+            }
+            if (term instanceof StringTerm || term instanceof AddressTerm) {
+                return COST_HEADER;
+            }
+            return COST_UNKNOWN;
+        }
+
+    }
+
+    private static class Node {
+
+        final SearchTerm term;
+        private final int cost;
+        private UidSet candidates;
+
+        Node(SearchTerm term, int cost) {
+            this.term = term;
+            this.cost = cost;
+        }
+
+        int cost() {
+            return cost;
+        }
+
+        /**
+         * @return {@code true} if {@link #candidates()} narrows down the
+         *         messages to match
+         */
+        boolean indexed() {
+            return false;
+        }
+
+        /**
+         * @return {@code true} if the candidates are exactly the matching
+         *         messages
+         */
+        boolean exact() {
+            return false;
+        }
+
+        final UidSet candidates() {
+            if (candidates == null) {
+                candidates = computeCandidates();
+            }
+            return candidates;
+        }
+
+        UidSet computeCandidates() {
+            throw new IllegalStateException("not indexed: " + SearchPlan.describe(term));
+        }
+
+        boolean match(Message msg) {
+            return term.match(msg);
+        }
+
+        /**
+         * Matches a message taken from the candidates of this node.
+         */
+        boolean verify(Message msg) {
+            return exact() || match(msg);
+        }
+
+        void describe(StringBuilder sb, int depth) {
+            for (int i = 0; i < depth; i++) {
+                sb.append("  ");
+            }
+            sb.append(SearchPlan.describe(term)).append(" cost=").append(cost());
+            if (indexed()) {
+                sb.append(exact() ? " index=exact" : " index=candidates")
+                    .append(" candidates=").append(candidates().size());
+            } else {
+                sb.append(" scan");
+            }
+            sb.append('\n');
+        }
+
+    }
+
+    private static final class FlagNode extends Node {
+
+        private final boolean indexed;
+        private final MessageStore store;
+        private final FlagIndex flagIndex;
+
+        FlagNode(FlagTerm term, MessageStore store, FlagIndex flagIndex) {
+            super(term, COST_FLAGS);
+            this.indexed = FlagIndex.isIndexed(term.getFlags());
+            this.store = store;
+            this.flagIndex = flagIndex;
+        }
+
+        @Override
+        boolean indexed() {
+            return indexed;
+        }
+
+        @Override
+        boolean exact() {
+            return indexed;
+        }
+
+        @Override
+        UidSet computeCandidates() {
+            FlagTerm flagTerm = (FlagTerm) term;
+            int bits = FlagIndex.bitsOf(flagTerm.getFlags());
+            int size = store.size();
+
+            BitSet positions;
+            if (flagTerm.getTestSet()) {
+                // all of the flags must be set
+                positions = flagIndex.matching(bits, size);
+            } else {
+                // none of the flags may be set
+                positions = flagIndex.matchingAny(bits, size);
+                positions.flip(0, size);
+            }
+
+            UidSet result = new UidSet();
+            for (int i = positions.nextSetBit(0); i >= 0; i = positions.nextSetBit(i + 1)) {
+                result.add(store.uidAt(i));
+            }
+            return result;
+        }
+
+    }
+
+    private static final class IndexedNode extends Node {
+
+        private final UidSet indexCandidates;
+
+        IndexedNode(SearchTerm term, UidSet indexCandidates) {
+            super(term, COST_HEADER);
+            this.indexCandidates = indexCandidates;
+        }
+
+        @Override
+        boolean indexed() {
+            return true;
+        }
+
+        @Override
+        UidSet computeCandidates() {
+            return indexCandidates;
+        }
+
+    }
+
+    private static final class AndNode extends Node {
+
+        private final List<Node> children;
+
+        AndNode(SearchTerm term, List<Node> children) {
+            super(term, sumOfCosts(children));
+            this.children = children;
+        }
+
+        @Override
+        boolean indexed() {
+            for (Node child : children) {
+                if (child.indexed()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        boolean exact() {
+            for (Node child : children) {
+                if (!child.exact()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        UidSet computeCandidates() {
+            UidSet result = null;
+            for (Node child : children) {
+                if (child.indexed()) {
+                    UidSet uids = child.candidates();
+                    result = result == null ? uids : result.intersect(uids);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        boolean match(Message msg) {
+            for (Node child : children) {
+                if (!child.match(msg)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        boolean verify(Message msg) {
+            // a candidate is in the candidates of all indexed children
+            for (Node child : children) {
+                if (child.indexed() ? !child.verify(msg) : !child.match(msg)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        void describe(StringBuilder sb, int depth) {
+            super.describe(sb, depth);
+            for (Node child : children) {
+                child.describe(sb, depth + 1);
+            }
+        }
+
+    }
+
+    private static final class OrNode extends Node {
+
+        private final List<Node> children;
+
+        OrNode(SearchTerm term, List<Node> children) {
+            super(term, sumOfCosts(children));
+            this.children = children;
+        }
+
+        @Override
+        boolean indexed() {
+            for (Node child : children) {
+                if (!child.indexed()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        boolean exact() {
+            for (Node child : children) {
+                if (!child.exact()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        UidSet computeCandidates() {
+            UidSet result = new UidSet();
+            for (Node child : children) {
+                result = result.union(child.candidates());
+            }
+            return result;
+        }
+
+        @Override
+        boolean match(Message msg) {
+            for (Node child : children) {
+                if (child.match(msg)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        void describe(StringBuilder sb, int depth) {
+            super.describe(sb, depth);
+            for (Node child : children) {
+                child.describe(sb, depth + 1);
+            }
+        }
+
+    }
+
+    private static final class NotNode extends Node {
+
+        private final Node child;
+        private final MessageStore store;
+
+        NotNode(SearchTerm term, Node child, MessageStore store) {
+            super(term, child.cost());
+            this.child = child;
+            this.store = store;
+        }
+
+        @Override
+        boolean indexed() {
+            return child.exact();
+        }
+
+        @Override
+        boolean exact() {
+            return child.exact();
+        }
+
+        @Override
+        UidSet computeCandidates() {
+            return store.uids().difference(child.candidates());
+        }
+
+        @Override
+        boolean match(Message msg) {
+            return !child.match(msg);
+        }
+
+        @Override
+        void describe(StringBuilder sb, int depth) {
+            super.describe(sb, depth);
+            child.describe(sb, depth + 1);
+        }
+
+    }
+
+    private static int sumOfCosts(List<Node> nodes) {
+        int cost = 0;
+        for (Node node : nodes) {
+            cost += node.cost();
+        }
+        return cost;
+    }
+
+    private static String describe(SearchTerm term) {
+        String name = term.getClass().getSimpleName();
+        if (term instanceof HeaderTerm) {
+            HeaderTerm ht = (HeaderTerm) term;
+            return name + ' ' + ht.getHeaderName() + ": \"" + ht.getPattern() + '"';
+        }
+        if (term instanceof StringTerm) {
+            return name + " \"" + ((StringTerm) term).getPattern() + '"';
+        }
+        if (term instanceof AddressTerm) {
+            return name + ' ' + ((AddressTerm) term).getAddress();
+        }
+        if (term instanceof IntegerComparisonTerm) {
+            IntegerComparisonTerm ict = (IntegerComparisonTerm) term;
+            return name + ' ' + operator(ict.getComparison()) + ' ' + ict.getNumber();
+        }
+        if (term instanceof DateTerm) {
+            DateTerm dt = (DateTerm) term;
+            return name + ' ' + operator(dt.getComparison()) + ' ' + dt.getDate();
+        }
+        if (term instanceof FlagTerm) {
+            FlagTerm ft = (FlagTerm) term;
+            Flags flags = ft.getFlags();
+            return name + (ft.getTestSet() ? " set " : " not set ") + flags;
+        }
+        return name;
+    }
+
+    private static String operator(int comparison) {
+        switch (comparison) {
+            case ComparisonTerm.LE: return "<=";
+            case ComparisonTerm.LT: return "<";
+            case ComparisonTerm.EQ: return "=";
+            case ComparisonTerm.NE: return "!=";
+            case ComparisonTerm.GT: return ">";
+            case ComparisonTerm.GE: return ">=";
+            default: return "?";
+        }
+    }
+
+}
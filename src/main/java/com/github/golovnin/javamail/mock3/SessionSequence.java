@@ -0,0 +1,107 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+/**
+ * The message sequence numbers as seen by one open folder, like the
+ * per-connection view of an IMAP server. The sequence is a sorted set of
+ * UIDs, the message number of a message is its position in the set + 1.
+ * It is initialized when the folder is opened and afterwards maintained
+ * from the add and expunge events of the {@link MailboxFolder}, so that
+ * reading messages does not renumber shared {@link MockMessage}s.
+ *
+ * <p>The sequence is thread safe. It never calls out while holding its
+ * lock, so it may be updated from event listeners holding other locks.
+ */
+final class SessionSequence {
+
+    private UidSet uids = new UidSet();
+
+    synchronized void reset(UidSet uids) {
+        this.uids = uids.copy();
+    }
+
+    synchronized void clear() {
+        uids = new UidSet();
+    }
+
+    synchronized void add(long uid) {
+        uids.add(uid);
+    }
+
+    synchronized void remove(long uid) {
+        uids.remove(uid);
+    }
+
+    synchronized int size() {
+        return uids.size();
+    }
+
+    /**
+     * @return the UID of the message with the given message number
+     * @throws ArrayIndexOutOfBoundsException if there is no such message
+     */
+    synchronized long uidAt(int msgnum) {
+        checkMsgNum(msgnum);
+        return uids.get(msgnum - 1);
+    }
+
+    /**
+     * @return the message number of the message with the given UID or 0
+     *         if the message is not in this sequence
+     */
+    synchronized int msgnum(long uid) {
+        int index = uids.indexOf(uid);
+        return index < 0 ? 0 : index + 1;
+    }
+
+    /**
+     * @return the UIDs of the messages numbered {@code low} to
+     *         {@code high}, both inclusive
+     * @throws ArrayIndexOutOfBoundsException if the range is out of bounds
+     */
+    synchronized UidSet range(int low, int high) {
+        UidSet result = new UidSet();
+        if (low > high) {
+            return result;
+        }
+        checkMsgNum(low);
+        checkMsgNum(high);
+
+        for (int msgnum = low; msgnum <= high; msgnum++) {
+            result.add(uids.get(msgnum - 1));
+        }
+        return result;
+    }
+
+    synchronized UidSet uids() {
+        return uids.copy();
+    }
+
+    private void checkMsgNum(int msgnum) {
+        if (msgnum < 1 || msgnum > uids.size()) {
+            throw new ArrayIndexOutOfBoundsException(
+                "message number (" + msgnum + ") out of bounds (" + uids.size() + ")");
+        }
+    }
+
+}
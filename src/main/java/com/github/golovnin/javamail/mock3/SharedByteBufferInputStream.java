@@ -0,0 +1,118 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import jakarta.mail.internet.SharedInputStream;
+
+/**
+ * A {@link SharedInputStream} reading a {@link ByteBuffer}, e.g. a region
+ * of a file mapped into memory. The buffer is never modified, substreams
+ * read duplicates of it.
+ */
+final class SharedByteBufferInputStream extends InputStream implements
+    SharedInputStream
+{
+
+    private final ByteBuffer buffer;
+    private final int start;
+    private int mark;
+
+    /**
+     * Reads the given buffer from its position to its limit.
+     */
+    SharedByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+        this.start = buffer.position();
+        this.mark = start;
+    }
+
+    @Override
+    public synchronized int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public synchronized long skip(long n) {
+        if (n <= 0) {
+            return 0;
+        }
+        int skipped = (int) Math.min(n, buffer.remaining());
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public synchronized int available() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        mark = buffer.position();
+    }
+
+    @Override
+    public synchronized void reset() {
+        buffer.position(mark);
+    }
+
+    @Override
+    public synchronized long getPosition() {
+        return buffer.position() - start;
+    }
+
+    @Override
+    public synchronized InputStream newStream(long start, long end) {
+        if (start < 0) {
+            throw new IllegalArgumentException("start < 0");
+        }
+        ByteBuffer region = buffer.duplicate();
+        int length = region.limit() - this.start;
+        if (end == -1) {
+            end = length;
+        }
+        region.limit(this.start + (int) Math.min(end, length));
+        region.position(this.start + (int) Math.min(start, length));
+        return new SharedByteBufferInputStream(region);
+    }
+
+}
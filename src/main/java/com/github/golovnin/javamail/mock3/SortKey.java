@@ -0,0 +1,235 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import jakarta.mail.Address;
+import jakarta.mail.Message.RecipientType;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetAddress;
+
+import com.sun.mail.imap.SortTerm;
+
+/**
+ * The sort keys of a message as defined by RFC 5256 (SORT). The keys are
+ * extracted once, string keys are case folded, so that sorting does not
+ * need to parse any headers.
+ */
+final class SortKey {
+
+    // leading "[blob] Re:", "Fw:", "Fwd[blob]:" of a subject
+    private static final Pattern SUBJECT_LEADER = Pattern.compile(
+        "(\\[[^\\[\\]]*\\]\\s*)*(re|fwd?)\\s*(\\[[^\\[\\]]*\\])?:\\s*",
+        Pattern.CASE_INSENSITIVE);
+    private static final Pattern SUBJECT_BLOB = Pattern.compile(
+        "\\[[^\\[\\]]*\\]\\s*");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final long uid;
+    private final long date;
+    private final long size;
+    private final String from;
+    private final String to;
+    private final String cc;
+    private final String subject;
+
+    private SortKey(MockMessage msg) {
+        this.uid = msg.getMockid();
+        this.date = date(msg);
+        this.size = size(msg);
+        this.from = mailbox(addresses(msg, null));
+        this.to = mailbox(addresses(msg, RecipientType.TO));
+        this.cc = mailbox(addresses(msg, RecipientType.CC));
+        this.subject = baseSubject(subject(msg));
+    }
+
+    static SortKey of(MockMessage msg) {
+        return new SortKey(msg);
+    }
+
+    /**
+     * Creates a comparator for the stored messages of a folder. Messages
+     * which are equal according to all criteria are ordered by UID.
+     *
+     * @throws MessagingException if no sort criterion is given or
+     *         {@link SortTerm#REVERSE} is not followed by a criterion
+     */
+    static Comparator<MockMessage> comparator(SortTerm[] terms)
+        throws MessagingException
+    {
+        if (terms == null || terms.length == 0) {
+            throw new MessagingException("no sort criteria");
+        }
+
+        List<Comparator<SortKey>> criteria = new ArrayList<>();
+        boolean reverse = false;
+        for (SortTerm term : terms) {
+            if (term == SortTerm.REVERSE) {
+                reverse = true;
+                continue;
+            }
+            Comparator<SortKey> criterion = criterion(term);
+            criteria.add(reverse ? criterion.reversed() : criterion);
+            reverse = false;
+        }
+        if (reverse) {
+            throw new MessagingException("REVERSE must be followed by a sort criterion");
+        }
+
+        Comparator<SortKey> result = criteria.get(0);
+        for (int i = 1; i < criteria.size(); i++) {
+            result = result.thenComparing(criteria.get(i));
+        }
+        Comparator<SortKey> byUid = result.thenComparingLong(k -> k.uid);
+        return (m1, m2) -> byUid.compare(m1.getSortKey(), m2.getSortKey());
+    }
+
+    private static Comparator<SortKey> criterion(SortTerm term)
+        throws MessagingException
+    {
+        if (term == SortTerm.ARRIVAL) {
+            // UIDs are assigned in arrival order and, unlike the internal
+            // date, never tie
+            return Comparator.comparingLong(k -> k.uid);
+        }
+        if (term == SortTerm.DATE) {
+            return Comparator.comparingLong(k -> k.date);
+        }
+        if (term == SortTerm.SIZE) {
+            return Comparator.comparingLong(k -> k.size);
+        }
+        if (term == SortTerm.FROM) {
+            return Comparator.comparing(k -> k.from);
+        }
+        if (term == SortTerm.TO) {
+            return Comparator.comparing(k -> k.to);
+        }
+        if (term == SortTerm.CC) {
+            return Comparator.comparing(k -> k.cc);
+        }
+        if (term == SortTerm.SUBJECT) {
+            return Comparator.comparing(k -> k.subject);
+        }
+        throw new MessagingException("unsupported sort criterion " + term);
+    }
+
+    // unparsable headers sort like missing ones
+
+    private static long date(MockMessage msg) {
+        try {
+            Date sent = msg.getSentDate();
+            if (sent == null) {
+                // the internal date is used instead (RFC 5256)
+                sent = msg.getReceivedDate();
+            }
+            return sent.getTime();
+        } catch (MessagingException e) {
+            return 0;
+        }
+    }
+
+    private static long size(MockMessage msg) {
+        try {
+            return msg.getRfc822Size();
+        } catch (MessagingException e) {
+            return 0;
+        }
+    }
+
+    private static Address[] addresses(MockMessage msg, RecipientType type) {
+        try {
+            return type == null ? msg.getFrom() : msg.getRecipients(type);
+        } catch (MessagingException e) {
+            return null;
+        }
+    }
+
+    private static String subject(MockMessage msg) {
+        try {
+            return msg.getSubject();
+        } catch (MessagingException e) {
+            return null;
+        }
+    }
+
+    private static String mailbox(Address[] addresses) {
+        if (addresses == null || addresses.length == 0
+            || !(addresses[0] instanceof InternetAddress))
+        {
+            return "";
+        }
+        String address = ((InternetAddress) addresses[0]).getAddress();
+        if (address == null) {
+            return "";
+        }
+        int at = address.lastIndexOf('@');
+        return fold(at < 0 ? address : address.substring(0, at));
+    }
+
+    /**
+     * Extracts the base subject as described in section 2.1 of RFC 5256.
+     */
+    static String baseSubject(String subject) {
+        if (subject == null) {
+            return "";
+        }
+
+        String s = WHITESPACE.matcher(subject).replaceAll(" ").trim();
+        boolean changed;
+        do {
+            changed = false;
+            while (s.regionMatches(true, s.length() - 5, "(fwd)", 0, 5)) {
+                s = s.substring(0, s.length() - 5).trim();
+            }
+
+            Matcher leader = SUBJECT_LEADER.matcher(s);
+            if (leader.lookingAt()) {
+                s = s.substring(leader.end());
+                changed = true;
+            } else {
+                Matcher blob = SUBJECT_BLOB.matcher(s);
+                if (blob.lookingAt() && blob.end() < s.length()) {
+                    s = s.substring(blob.end());
+                    changed = true;
+                }
+            }
+
+            if (s.regionMatches(true, 0, "[fwd:", 0, 5) && s.endsWith("]")) {
+                s = s.substring(5, s.length() - 1).trim();
+                changed = true;
+            }
+        } while (changed);
+
+        return fold(s);
+    }
+
+    private static String fold(String s) {
+        return s.toUpperCase(Locale.ROOT);
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+/**
+ * Bounded log of the UIDs of expunged messages together with the
+ * modification sequence of the expunge, used to answer QRESYNC (RFC 7162)
+ * requests. Entries are appended in ascending modification sequence order
+ * into a ring buffer, the oldest entries are dropped when the log is full.
+ *
+ * <p>The log is not thread safe, the owning {@link MailboxFolder} guards
+ * all accesses.
+ */
+final class TombstoneLog {
+
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private long[] uids;
+    private long[] modSeqs;
+    private int head;
+    private int size;
+    // the highest modification sequence of all dropped entries
+    private long droppedModSeq;
+
+    TombstoneLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    TombstoneLog(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        uids = new long[capacity];
+        modSeqs = new long[capacity];
+    }
+
+    int capacity() {
+        return uids.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void add(long uid, long modSeq) {
+        if (size == uids.length) {
+            droppedModSeq = modSeqs[head];
+            head = (head + 1) % uids.length;
+            size--;
+        }
+        int tail = (head + size) % uids.length;
+        uids[tail] = uid;
+        modSeqs[tail] = modSeq;
+        size++;
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+        droppedModSeq = 0;
+    }
+
+    /**
+     * @return {@code true} if all messages expunged after the given
+     *         modification sequence are still in the log
+     */
+    boolean covers(long modSeq) {
+        return modSeq >= droppedModSeq;
+    }
+
+    /**
+     * @return the UIDs of the messages in the log which were expunged
+     *         after the given modification sequence
+     */
+    UidSet expungedSince(long modSeq) {
+        // binary search for the first entry with a greater modseq
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (modSeqAt(middle) <= modSeq) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        long[] result = new long[size - low];
+        for (int i = low; i < size; i++) {
+            result[i - low] = uids[(head + i) % uids.length];
+        }
+        return UidSet.of(result);
+    }
+
+    private long modSeqAt(int i) {
+        return modSeqs[(head + i) % modSeqs.length];
+    }
+
+    /**
+     * Changes the capacity, keeping the newest entries.
+     */
+    void resize(int capacity) {
+        TombstoneLog resized = new TombstoneLog(capacity);
+        resized.droppedModSeq = droppedModSeq;
+        for (int i = 0; i < size; i++) {
+            resized.add(uids[(head + i) % uids.length], modSeqAt(i));
+        }
+        uids = resized.uids;
+        modSeqs = resized.modSeqs;
+        head = resized.head;
+        size = resized.size;
+        droppedModSeq = resized.droppedModSeq;
+    }
+
+}
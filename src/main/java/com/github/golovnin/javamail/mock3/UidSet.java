@@ -0,0 +1,202 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import java.util.Arrays;
+
+/**
+ * Sorted set of UIDs backed by a {@code long[]}.
+ */
+final class UidSet {
+
+    private long[] uids;
+    private int size;
+
+    UidSet() {
+        this(new long[4], 0);
+    }
+
+    private UidSet(long[] uids, int size) {
+        this.uids = uids;
+        this.size = size;
+    }
+
+    static UidSet of(long[] uids) {
+        long[] sorted = uids.clone();
+        Arrays.sort(sorted);
+
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return new UidSet(sorted, size);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long get(int index) {
+        if (index < 0 || index >= size) {
+            throw new ArrayIndexOutOfBoundsException(
+                "index (" + index + ") out of bounds (" + size + ")");
+        }
+        return uids[index];
+    }
+
+    boolean contains(long uid) {
+        return Arrays.binarySearch(uids, 0, size, uid) >= 0;
+    }
+
+    /**
+     * @return the index of the given UID or a negative value as described
+     *         in {@link Arrays#binarySearch(long[], int, int, long)}
+     */
+    int indexOf(long uid) {
+        return Arrays.binarySearch(uids, 0, size, uid);
+    }
+
+    void add(long uid) {
+        if (size > 0 && uids[size - 1] >= uid) {
+            int index = Arrays.binarySearch(uids, 0, size, uid);
+            if (index >= 0) {
+                return;
+            }
+            insert(-(index + 1), uid);
+            return;
+        }
+
+        // fast path: UIDs are allocated in ascending order
+        insert(size, uid);
+    }
+
+    private void insert(int index, long uid) {
+        if (size == uids.length) {
+            uids = Arrays.copyOf(uids, uids.length + (uids.length >> 1) + 1);
+        }
+        System.arraycopy(uids, index, uids, index + 1, size - index);
+        uids[index] = uid;
+        size++;
+    }
+
+    boolean remove(long uid) {
+        int index = Arrays.binarySearch(uids, 0, size, uid);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(uids, index + 1, uids, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    UidSet intersect(UidSet other) {
+        UidSet small = size <= other.size ? this : other;
+        UidSet large = small == this ? other : this;
+
+        long[] result = new long[small.size];
+        int count = 0;
+        if (small.size * 16 < large.size) {
+            // probe the larger set with binary searches
+            int from = 0;
+            for (int i = 0; i < small.size && from < large.size; i++) {
+                int index = Arrays.binarySearch(large.uids, from, large.size, small.uids[i]);
+                if (index >= 0) {
+                    result[count++] = small.uids[i];
+                    from = index + 1;
+                } else {
+                    from = -(index + 1);
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while (i < small.size && j < large.size) {
+                long a = small.uids[i];
+                long b = large.uids[j];
+                if (a == b) {
+                    result[count++] = a;
+                    i++;
+                    j++;
+                } else if (a < b) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+        }
+        return new UidSet(result, count);
+    }
+
+    UidSet union(UidSet other) {
+        long[] result = new long[size + other.size];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            long next;
+            if (j >= other.size || i < size && uids[i] < other.uids[j]) {
+                next = uids[i++];
+            } else if (i >= size || other.uids[j] < uids[i]) {
+                next = other.uids[j++];
+            } else {
+                next = uids[i++];
+                j++;
+            }
+            result[count++] = next;
+        }
+        return new UidSet(result, count);
+    }
+
+    /**
+     * @return the UIDs of this set which are not contained in the other set
+     */
+    UidSet difference(UidSet other) {
+        long[] result = new long[size];
+        int count = 0;
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            long uid = uids[i];
+            while (j < other.size && other.uids[j] < uid) {
+                j++;
+            }
+            if (j >= other.size || other.uids[j] != uid) {
+                result[count++] = uid;
+            }
+        }
+        return new UidSet(result, count);
+    }
+
+    UidSet copy() {
+        return new UidSet(Arrays.copyOf(uids, Math.max(size, 1)), size);
+    }
+
+    long[] toArray() {
+        return Arrays.copyOf(uids, size);
+    }
+
+}
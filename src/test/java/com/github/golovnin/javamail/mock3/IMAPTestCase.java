@@ -22,25 +22,43 @@
 package com.github.golovnin.javamail.mock3;
 
 import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import jakarta.mail.FetchProfile;
+import jakarta.mail.Flags;
 import jakarta.mail.Flags.Flag;
 import jakarta.mail.Folder;
 import jakarta.mail.Message;
 import jakarta.mail.Message.RecipientType;
 import jakarta.mail.MessagingException;
+import jakarta.mail.Part;
 import jakarta.mail.Session;
 import jakarta.mail.Store;
 import jakarta.mail.UIDFolder;
+import jakarta.mail.event.MailEvent;
+import jakarta.mail.event.MessageCountAdapter;
+import jakarta.mail.event.MessageChangedEvent;
 import jakarta.mail.event.MessageCountEvent;
 import jakarta.mail.event.MessageCountListener;
 import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeBodyPart;
 import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeMultipart;
+import jakarta.mail.search.SubjectTerm;
 
 import com.sun.mail.imap.AppendUID;
 import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPStore;
+import com.sun.mail.imap.MessageVanishedEvent;
+import com.sun.mail.imap.ResyncData;
+import com.sun.mail.imap.SortTerm;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -337,6 +355,593 @@ public class IMAPTestCase extends AbstractTestCase {
 
     }
 
+    @Test
+    public void testMessageCounters() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        msg.setRecipient(RecipientType.TO, new InternetAddress("hendrik@unknown.com"));
+        mf.add(msg); // 11
+        mf.add(msg); // 12
+        mf.add(msg); // 13
+
+        final Store store = session.getStore();
+        store.connect("hendrik@unknown.com", null);
+        final Folder inbox = store.getFolder("INBOX");
+        inbox.open(Folder.READ_WRITE);
+
+        assertEquals(3, inbox.getNewMessageCount());
+        assertTrue(inbox.hasNewMessages());
+        assertEquals(3, inbox.getUnreadMessageCount());
+        assertEquals(0, inbox.getDeletedMessageCount());
+
+        inbox.getMessage(1).setFlag(Flag.SEEN, true);
+        inbox.getMessage(2).setFlag(Flag.DELETED, true);
+
+        assertEquals(2, inbox.getUnreadMessageCount());
+        assertEquals(1, inbox.getDeletedMessageCount());
+        assertEquals(1, mf.getByFlags(new Flags(Flag.SEEN), true).size());
+        assertEquals(2, mf.getByFlags(new Flags(Flag.DELETED), false).size());
+
+        inbox.close(true);
+        inbox.open(Folder.READ_WRITE);
+
+        assertEquals(2, inbox.getMessageCount());
+        assertEquals(0, inbox.getDeletedMessageCount());
+        assertEquals(1, inbox.getUnreadMessageCount());
+        assertEquals(2, inbox.getNewMessageCount());
+        inbox.close(false);
+    }
+
+    @Test
+    public void testSearchWithinMessages() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        msg.setRecipient(RecipientType.TO, new InternetAddress("hendrik@unknown.com"));
+        mf.add(msg); // 11
+        mf.add(msg); // 12
+        mf.add(msg); // 13
+
+        final Store store = session.getStore();
+        store.connect("hendrik@unknown.com", null);
+        final Folder inbox = store.getFolder("INBOX");
+        inbox.open(Folder.READ_ONLY);
+
+        final Message[] all = inbox.getMessages();
+        final Message[] found = inbox.search(new SubjectTerm("Test"),
+            new Message[] { all[2], all[0], all[2] });
+        assertEquals(2, found.length);
+        assertEquals(11, ((UIDFolder) inbox).getUID(found[0]));
+        assertEquals(13, ((UIDFolder) inbox).getUID(found[1]));
+        assertEquals(0, inbox.search(new SubjectTerm("Test"), new Message[0]).length);
+        inbox.close(false);
+    }
+
+    private static long[] uids(final Folder folder, final Message[] msgs)
+        throws MessagingException
+    {
+        final long[] uids = new long[msgs.length];
+        for (int i = 0; i < msgs.length; i++) {
+            uids[i] = ((UIDFolder) folder).getUID(msgs[i]);
+        }
+        return uids;
+    }
+
+    @Test
+    public void testSortedMessages() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final String[][] data = {
+            { "Re: [list] Banana", "carol@sender.com", "3000", "a" },
+            { "apple", "Bob@sender.com", "1000", "a much longer text" },
+            { "Fwd: cherry (fwd)", "alice@sender.com", "2000", "text" },
+            { "Apple", "bob@sender.com", "1000", "an even much longer text" },
+        };
+        for (final String[] d : data) {
+            final MimeMessage msg = new MimeMessage((Session) null);
+            msg.setSubject(d[0]);
+            msg.setFrom(d[1]);
+            msg.setSentDate(new Date(Long.parseLong(d[2])));
+            msg.setText(d[3]);
+            msg.setRecipient(RecipientType.TO, new InternetAddress("hendrik@unknown.com"));
+            mf.add(msg); // 11 - 14
+        }
+
+        final Store store = session.getStore();
+        assertTrue(((IMAPStore) store).hasCapability("SORT"));
+        store.connect("hendrik@unknown.com", null);
+        final IMAPFolder inbox = (IMAPFolder) store.getFolder("INBOX");
+        inbox.open(Folder.READ_ONLY);
+
+        assertArrayEquals(new long[] { 11, 12, 13, 14 },
+            uids(inbox, inbox.getSortedMessages(new SortTerm[] { SortTerm.ARRIVAL })));
+        assertArrayEquals(new long[] { 14, 13, 12, 11 }, uids(inbox,
+            inbox.getSortedMessages(new SortTerm[] { SortTerm.REVERSE, SortTerm.ARRIVAL })));
+        assertArrayEquals(new long[] { 12, 14, 11, 13 },
+            uids(inbox, inbox.getSortedMessages(new SortTerm[] { SortTerm.SUBJECT })));
+        assertArrayEquals(new long[] { 12, 14, 13, 11 },
+            uids(inbox, inbox.getSortedMessages(new SortTerm[] { SortTerm.DATE })));
+        assertArrayEquals(new long[] { 13, 12, 14, 11 },
+            uids(inbox, inbox.getSortedMessages(new SortTerm[] { SortTerm.FROM })));
+        assertArrayEquals(new long[] { 13, 14, 12, 11 }, uids(inbox,
+            inbox.getSortedMessages(new SortTerm[] { SortTerm.FROM, SortTerm.REVERSE, SortTerm.SIZE })));
+        assertArrayEquals(new long[] { 14, 12 }, uids(inbox,
+            inbox.getSortedMessages(new SortTerm[] { SortTerm.REVERSE, SortTerm.SIZE },
+                new SubjectTerm("apple"))));
+        inbox.close(false);
+    }
+
+    @Test
+    public void testSortByInternalDate() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        msg.setSentDate(new Date(1000));
+        mf.add(msg); // 11
+        msg.removeHeader("Date");
+        final long before = System.currentTimeMillis();
+        mf.add(msg); // 12
+
+        final Store store = session.getStore();
+        store.connect("hendrik@unknown.com", null);
+        final IMAPFolder inbox = (IMAPFolder) store.getFolder("INBOX");
+        inbox.open(Folder.READ_ONLY);
+
+        // a message without a Date header is sorted by its internal date
+        assertNull(inbox.getMessage(2).getSentDate());
+        assertTrue(inbox.getMessage(2).getReceivedDate().getTime() >= before);
+        assertArrayEquals(new long[] { 11, 12 },
+            uids(inbox, inbox.getSortedMessages(new SortTerm[] { SortTerm.DATE })));
+        inbox.close(false);
+    }
+
+    @Test
+    public void testChangedSince() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        msg.setRecipient(RecipientType.TO, new InternetAddress("hendrik@unknown.com"));
+        mf.add(msg); // 11
+        mf.add(msg); // 12
+        mf.add(msg); // 13
+
+        final Store store = session.getStore();
+        assertTrue(((IMAPStore) store).hasCapability("CONDSTORE"));
+        store.connect("hendrik@unknown.com", null);
+        final IMAPFolder inbox = (IMAPFolder) store.getFolder("INBOX");
+        inbox.open(Folder.READ_WRITE);
+
+        final long modSeq = inbox.getHighestModSeq();
+        assertEquals(modSeq, ((MockMessage) mf.getById(13)).getModSeq());
+        assertEquals(0, inbox.getMessagesByUIDChangedSince(1, UIDFolder.LASTUID, modSeq).length);
+
+        inbox.getMessage(3).setFlag(Flag.SEEN, true);
+        inbox.getMessage(1).setFlag(Flag.FLAGGED, true);
+        assertEquals(modSeq + 2, inbox.getHighestModSeq());
+        assertEquals(modSeq + 2, ((MockMessage) mf.getById(11)).getModSeq());
+
+        assertArrayEquals(new long[] { 11, 13 }, uids(inbox,
+            inbox.getMessagesByUIDChangedSince(1, UIDFolder.LASTUID, modSeq)));
+        assertArrayEquals(new long[] { 11 }, uids(inbox,
+            inbox.getMessagesByUIDChangedSince(1, UIDFolder.LASTUID, modSeq + 1)));
+        assertArrayEquals(new long[] { 13 }, uids(inbox,
+            inbox.getMessagesByUIDChangedSince(12, 13, modSeq)));
+
+        inbox.getMessage(1).setFlag(Flag.DELETED, true);
+        inbox.expunge();
+        assertTrue(inbox.getHighestModSeq() > modSeq + 3);
+        assertArrayEquals(new long[] { 13 }, uids(inbox,
+            inbox.getMessagesByUIDChangedSince(1, UIDFolder.LASTUID, modSeq)));
+        inbox.close(false);
+    }
+
+    @Test
+    public void testQuickResync() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        msg.setRecipient(RecipientType.TO, new InternetAddress("hendrik@unknown.com"));
+        mf.add(msg); // 11
+        mf.add(msg); // 12
+        mf.add(msg); // 13
+        mf.add(msg); // 14
+
+        final Store store = session.getStore();
+        assertTrue(((IMAPStore) store).hasCapability("QRESYNC"));
+        store.connect("hendrik@unknown.com", null);
+        final IMAPFolder inbox = (IMAPFolder) store.getFolder("INBOX");
+        inbox.open(Folder.READ_WRITE);
+        final long uidValidity = inbox.getUIDValidity();
+        final long modSeq = inbox.getHighestModSeq();
+        inbox.close(false);
+
+        mf.getById(12).setFlag(Flag.SEEN, true);
+        mf.getById(11).setFlag(Flag.DELETED, true);
+        mf.getById(13).setFlag(Flag.DELETED, true);
+        mf.expunge();
+
+        List<MailEvent> events = inbox.open(Folder.READ_WRITE,
+            new ResyncData(uidValidity, modSeq));
+        assertEquals(2, events.size());
+        assertTrue(events.get(0) instanceof MessageVanishedEvent);
+        assertArrayEquals(new long[] { 11, 13 },
+            ((MessageVanishedEvent) events.get(0)).getUIDs());
+        assertTrue(events.get(1) instanceof MessageChangedEvent);
+        assertEquals(12, inbox.getUID(((MessageChangedEvent) events.get(1)).getMessage()));
+        inbox.close(false);
+
+        assertNull(inbox.open(Folder.READ_WRITE, new ResyncData(uidValidity + 1, modSeq)));
+        inbox.close(false);
+
+        // the tombstones of 11 and 13 are dropped, all assigned UIDs which
+        // are not in the folder vanish
+        mf.setTombstoneCapacity(1);
+        mf.getById(14).setFlag(Flag.DELETED, true);
+        mf.expunge();
+        events = inbox.open(Folder.READ_WRITE, new ResyncData(uidValidity, modSeq));
+        assertArrayEquals(new long[] { 11, 13, 14 },
+            ((MessageVanishedEvent) events.get(0)).getUIDs());
+        inbox.close(false);
+    }
+
+    @Test
+    public void testSessionSequences() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        msg.setRecipient(RecipientType.TO, new InternetAddress("hendrik@unknown.com"));
+        mf.add(msg); // 11
+        mf.add(msg); // 12
+        mf.add(msg); // 13
+
+        final Store store = session.getStore();
+        store.connect("hendrik@unknown.com", null);
+        final Folder first = store.getFolder("INBOX");
+        final Folder second = store.getFolder("INBOX");
+        first.open(Folder.READ_WRITE);
+        second.open(Folder.READ_WRITE);
+
+        mf.add(msg); // 14
+        assertEquals(4, first.getMessageCount());
+        assertEquals(4, second.getMessageCount());
+        assertEquals(14L, ((UIDFolder) second).getUID(second.getMessage(4)));
+
+        first.getMessage(1).setFlag(Flag.DELETED, true);
+        final Message[] expunged = first.expunge();
+        assertEquals(1, expunged.length);
+        assertEquals(1, expunged[0].getMessageNumber());
+
+        assertEquals(3, second.getMessageCount());
+        final Message[] all = second.getMessages(1, 3);
+        assertArrayEquals(new long[] { 12, 13, 14 }, uids(second, all));
+        assertEquals(1, all[0].getMessageNumber());
+        assertEquals(3, all[2].getMessageNumber());
+        assertEquals(2, mf.getById(13).getMessageNumber());
+
+        first.close(false);
+        second.close(false);
+    }
+
+    @Test
+    public void testBulkAppend() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        msg.setRecipient(RecipientType.TO, new InternetAddress("hendrik@unknown.com"));
+        mf.add(msg); // 11
+
+        final Store store = session.getStore();
+        store.connect("hendrik@unknown.com", null);
+        final IMAPFolder inbox = (IMAPFolder) store.getFolder("INBOX");
+        final CountDownLatch added = new CountDownLatch(1);
+        final List<Integer> batches = new CopyOnWriteArrayList<>();
+        inbox.addMessageCountListener(new MessageCountAdapter() {
+
+            @Override
+            public void messagesAdded(final MessageCountEvent e) {
+                batches.add(e.getMessages().length);
+                added.countDown();
+            }
+
+        });
+        inbox.open(Folder.READ_WRITE);
+
+        final AppendUID[] uids = inbox.appendUIDMessages(new Message[] { msg, msg, msg });
+        assertEquals(3, uids.length);
+        assertEquals(12L, uids[0].uid);
+        assertEquals(14L, uids[2].uid);
+        assertEquals(mf.getUidValidity(), uids[0].uidvalidity);
+        assertEquals(4, inbox.getMessageCount());
+
+        assertTrue(added.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(3), batches);
+
+        inbox.close(false);
+    }
+
+    @Test
+    public void testCopyUIDMessages() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+        final MailboxFolder target = mb.getRoot().getOrAddSubFolder("test").create();
+        target.invalidateUid();
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        for (final String subject : new String[] { "first", "second", "third" }) {
+            msg.setSubject(subject);
+            mf.add(msg); // 11 - 13
+        }
+        target.add(msg); // 11
+
+        final Store store = session.getStore();
+        store.connect("hendrik@unknown.com", null);
+        final IMAPFolder inbox = (IMAPFolder) store.getFolder("INBOX");
+        inbox.open(Folder.READ_WRITE);
+
+        // the copies are appended to the target folder, the UIDs are the
+        // ones assigned by the target
+        final AppendUID[] copied = inbox.copyUIDMessages(inbox.getMessages(2, 3),
+            store.getFolder("test"));
+        assertEquals(2, copied.length);
+        assertEquals(target.getUidValidity(), copied[0].uidvalidity);
+        assertTrue(copied[0].uidvalidity != mf.getUidValidity());
+        assertEquals(12L, copied[0].uid);
+        assertEquals(13L, copied[1].uid);
+        assertEquals(3, target.getMessageCount());
+        assertEquals("second", target.getById(12).getSubject());
+        assertEquals("third", target.getById(13).getSubject());
+
+        // the source folder is unchanged
+        assertEquals(3, inbox.getMessageCount());
+        assertEquals(3, mf.getMessageCount());
+        assertEquals(13L, mf.getUniqueMessageId());
+        inbox.close(false);
+    }
+
+    @Test
+    public void testMessageViews() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        msg.setRecipient(RecipientType.TO, new InternetAddress("hendrik@unknown.com"));
+        mf.add(msg); // 11
+
+        final Store store = session.getStore();
+        store.connect("hendrik@unknown.com", null);
+        final Folder inbox = store.getFolder("INBOX");
+        inbox.open(Folder.READ_WRITE);
+
+        final Message first = inbox.getMessage(1);
+        final Message second = inbox.getMessages()[0];
+        assertTrue(first != second);
+        assertEquals(inbox, first.getFolder());
+        assertEquals("Test", second.getSubject());
+        assertEquals("Some text here ...", second.getContent());
+        assertEquals(mf.getById(11).getSize(), first.getSize());
+
+        // views share the flags of the stored message
+        first.setFlag(Flag.SEEN, true);
+        assertTrue(second.isSet(Flag.SEEN));
+        assertTrue(mf.getById(11).isSet(Flag.SEEN));
+        assertEquals(1, mf.getMessageCount(Flag.SEEN, true));
+
+        inbox.close(false);
+    }
+
+    @Test
+    public void testFetchProfile() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        msg.setRecipient(RecipientType.TO, new InternetAddress("hendrik@unknown.com"));
+        mf.add(msg); // 11
+        mf.add(msg); // 12
+        mf.add(msg); // 13
+
+        final Store store = session.getStore();
+        store.connect("hendrik@unknown.com", null);
+        final IMAPMockFolder inbox = (IMAPMockFolder) store.getFolder("INBOX");
+        inbox.open(Folder.READ_WRITE);
+
+        final Message[] msgs = inbox.getMessages();
+        final FetchProfile fp = new FetchProfile();
+        fp.add(FetchProfile.Item.ENVELOPE);
+        fp.add(FetchProfile.Item.FLAGS);
+        inbox.fetch(msgs, fp);
+        for (final Message m : msgs) {
+            assertEquals("Test", m.getSubject());
+            assertEquals("from@sender.com", m.getFrom()[0].toString());
+            assertTrue(!m.isSet(Flag.DELETED));
+        }
+        assertEquals(1, inbox.getFetchStats().getFetchCount());
+        assertEquals(3, inbox.getFetchStats().getFetchedMessageCount());
+        assertEquals(0, inbox.getFetchStats().getLazyLoadCount());
+
+        // the content has not been fetched
+        assertEquals("Some text here ...", msgs[0].getContent());
+        assertEquals("Some text here ...", msgs[0].getContent());
+        assertEquals(1, inbox.getFetchStats().getLazyContentLoadCount());
+        assertEquals(0, msgs[1].getSize() - msgs[0].getSize());
+        assertTrue(inbox.getFetchStats().getLazyLoadCount() >= 3);
+
+        // fresh handles start out with nothing loaded
+        final long lazyLoads = inbox.getFetchStats().getLazyLoadCount();
+        assertEquals("Test", inbox.getMessage(1).getSubject());
+        assertEquals(lazyLoads + 1, inbox.getFetchStats().getLazyLoadCount());
+
+        inbox.close(false);
+    }
+
+    @Test
+    public void testMimeStructure() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final MimeBodyPart text = new MimeBodyPart();
+        text.setText("Some text here ...");
+        final MimeBodyPart attachment = new MimeBodyPart();
+        attachment.setText("0123456789");
+        attachment.setDisposition(Part.ATTACHMENT);
+        attachment.setFileName("data.txt");
+        final MimeMultipart mp = new MimeMultipart();
+        mp.addBodyPart(text);
+        mp.addBodyPart(attachment);
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Attachment");
+        msg.setFrom("from@sender.com");
+        msg.setContent(mp);
+        msg.saveChanges();
+        mf.add(msg); // 11
+
+        final MimeStructure structure = ((MockMessage) mf.getById(11)).getStructure();
+        assertTrue(structure.isMultipart());
+        assertEquals(2, structure.getPartCount());
+        assertTrue(structure.getPart(0).getContentType().startsWith("text/plain"));
+        assertNull(structure.getPart(0).getFileName());
+        assertEquals(Part.ATTACHMENT, structure.getPart(1).getDisposition());
+        assertEquals("data.txt", structure.getPart(1).getFileName());
+        assertEquals(10, structure.getPart(1).getSize());
+        assertEquals(0, structure.getPart(1).getPartCount());
+
+        final Store store = session.getStore();
+        store.connect("hendrik@unknown.com", null);
+        final IMAPMockFolder inbox = (IMAPMockFolder) store.getFolder("INBOX");
+        inbox.open(Folder.READ_ONLY);
+
+        // views answer from the structure of the stored message
+        final MockMessage view = (MockMessage) inbox.getMessage(1);
+        assertTrue(structure == view.getStructure());
+        assertTrue(view.isMimeType("multipart/mixed"));
+        assertEquals(structure.getContentType(), view.getContentType());
+        assertEquals(0, inbox.getFetchStats().getLazyContentLoadCount());
+        assertEquals(2, ((MimeMultipart) view.getContent()).getCount());
+
+        inbox.close(false);
+    }
+
+    @Test
+    public void testQuickResyncKnownUids() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        mf.add(msg); // 11
+        mf.add(msg); // 12
+        mf.add(msg); // 13
+        mf.add(msg); // 14
+
+        final Store store = session.getStore();
+        store.connect("hendrik@unknown.com", null);
+        final IMAPFolder inbox = (IMAPFolder) store.getFolder("INBOX");
+        inbox.open(Folder.READ_WRITE);
+        final long uidValidity = inbox.getUIDValidity();
+        final long modSeq = inbox.getHighestModSeq();
+        inbox.close(false);
+
+        mf.getById(12).setFlag(Flag.SEEN, true);
+        mf.getById(14).setFlag(Flag.SEEN, true);
+        mf.getById(11).setFlag(Flag.DELETED, true);
+        mf.getById(13).setFlag(Flag.DELETED, true);
+        mf.expunge();
+
+        // the client knows of 12 and 13 only
+        final List<MailEvent> events = inbox.open(Folder.READ_WRITE,
+            new ResyncData(uidValidity, modSeq, 12, 13));
+        assertEquals(2, events.size());
+        assertArrayEquals(new long[] { 13 },
+            ((MessageVanishedEvent) events.get(0)).getUIDs());
+        assertEquals(12, inbox.getUID(((MessageChangedEvent) events.get(1)).getMessage()));
+        inbox.close(false);
+    }
+
+    @Test
+    public void testUnchangedFlags() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        mf.add(msg); // 11
+
+        final Store store = session.getStore();
+        store.connect("hendrik@unknown.com", null);
+        final IMAPFolder inbox = (IMAPFolder) store.getFolder("INBOX");
+        inbox.open(Folder.READ_WRITE);
+
+        final long modSeq = inbox.getHighestModSeq();
+        inbox.getMessage(1).setFlag(Flag.SEEN, true);
+        assertEquals(modSeq + 1, inbox.getHighestModSeq());
+
+        // setting flags which are already set does not change anything
+        inbox.getMessage(1).setFlag(Flag.SEEN, true);
+        inbox.getMessage(1).setFlag(Flag.DELETED, false);
+        assertEquals(modSeq + 1, inbox.getHighestModSeq());
+        assertEquals(modSeq + 1, ((MockMessage) mf.getById(11)).getModSeq());
+
+        inbox.getMessage(1).setFlags(new Flags("custom"), true);
+        assertEquals(modSeq + 2, inbox.getHighestModSeq());
+        inbox.getMessage(1).setFlags(new Flags("custom"), true);
+        assertEquals(modSeq + 2, inbox.getHighestModSeq());
+
+        inbox.close(false);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testHighestModSeqOfClosedFolder() throws Exception {
+        MockMailbox.get("hendrik@unknown.com");
+
+        final Store store = session.getStore();
+        store.connect("hendrik@unknown.com", null);
+        final IMAPFolder inbox = (IMAPFolder) store.getFolder("INBOX");
+        inbox.getHighestModSeq();
+    }
+
     @Test
     public void testNotOnlyInbox() throws Exception {
         final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
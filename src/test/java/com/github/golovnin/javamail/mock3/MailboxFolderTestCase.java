@@ -21,16 +21,36 @@
  */
 package com.github.golovnin.javamail.mock3;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import jakarta.mail.Flags;
+import jakarta.mail.Flags.Flag;
+import jakarta.mail.Folder;
 import jakarta.mail.IllegalWriteException;
+import jakarta.mail.Message;
 import jakarta.mail.Message.RecipientType;
+import jakarta.mail.MessagingException;
 import jakarta.mail.Session;
+import jakarta.mail.Store;
+import jakarta.mail.UIDFolder;
 import jakarta.mail.internet.InternetAddress;
 import jakarta.mail.internet.MimeMessage;
 
+import com.sun.mail.imap.protocol.UIDSet;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class MailboxFolderTestCase extends AbstractTestCase {
@@ -68,6 +88,76 @@ public class MailboxFolderTestCase extends AbstractTestCase {
         assertEquals(msg.getSubject(), mf.getByMsgNum(3).getSubject());
     }
 
+    @Test
+    public void testMessageNumbersAfterExpunge() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        msg.setRecipient(RecipientType.TO, new InternetAddress("hendrik@unknown.com"));
+        for (int i = 0; i < 5; i++) {
+            mf.add(msg); // 11 - 15
+        }
+
+        mf.markMessageAsDeleted(mf.getByMsgNum(2));
+        mf.markMessageAsDeleted(mf.getByMsgNum(4));
+        assertEquals(2, mf.expunge().size());
+
+        assertEquals(3, mf.getMessageCount());
+        assertEquals(11L, mf.getUID(mf.getByMsgNum(1)));
+        assertEquals(13L, mf.getUID(mf.getByMsgNum(2)));
+        assertEquals(15L, mf.getUID(mf.getByMsgNum(3)));
+        assertEquals(2, mf.getMsgNum(mf.getById(13)));
+        assertEquals(3, mf.getByMsgNum(3).getMessageNumber());
+
+        final Message[] range = mf.getByMsgNums(2, 3).toArray(new Message[0]);
+        assertEquals(2, range.length);
+        assertEquals(13L, mf.getUID(range[0]));
+        assertEquals(15L, mf.getUID(range[1]));
+        assertEquals(3, range[1].getMessageNumber());
+    }
+
+    @Test
+    public void testGetByIds() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        msg.setRecipient(RecipientType.TO, new InternetAddress("hendrik@unknown.com"));
+        for (int i = 0; i < 10; i++) {
+            mf.add(msg); // 11 - 20
+        }
+
+        assertEquals(3, mf.getByIds(13, 15).size());
+        assertEquals(0, mf.getByIds(30, 40).size());
+        assertEquals(2, mf.getByIds(19, UIDFolder.LASTUID).size());
+        // "n:*" with n beyond the highest UID returns the last message
+        final Collection<Message> last = mf.getByIds(100, UIDFolder.LASTUID);
+        assertEquals(1, last.size());
+        assertEquals(20L, mf.getUID(last.iterator().next()));
+        assertEquals(10, last.iterator().next().getMessageNumber());
+
+        final Message[] byIds = mf.getByIds(new long[] { 18, 12, 99, 12, 1 }).toArray(new Message[0]);
+        assertEquals(2, byIds.length);
+        assertEquals(12L, mf.getUID(byIds[0]));
+        assertEquals(2, byIds[0].getMessageNumber());
+        assertEquals(18L, mf.getUID(byIds[1]));
+
+        final UIDSet[] sets = UIDSet.parseUIDSets("17:19,11,12:13,18");
+        final Message[] bySets = mf.getByIds(sets).toArray(new Message[0]);
+        assertEquals(6, bySets.length);
+        assertEquals(11L, mf.getUID(bySets[0]));
+        assertEquals(13L, mf.getUID(bySets[2]));
+        assertEquals(17L, mf.getUID(bySets[3]));
+        assertEquals(19L, mf.getUID(bySets[5]));
+    }
+
     @Test
     public void testDeleteFolder() throws Exception {
         final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
@@ -142,4 +232,435 @@ public class MailboxFolderTestCase extends AbstractTestCase {
         assertNotNull(mf.getById(mf.getUID(mf.getByMsgNum(3))));
     }
 
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        for (int i = 0; i < 100; i++) {
+            mf.add(msg);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 2; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        mf.add(msg);
+                        mf.getById(11 + i % 100).setFlag(Flag.SEEN, i % 2 == 0);
+                    }
+                    return null;
+                }));
+            }
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        final int count = mf.getMessageCount();
+                        assertTrue(count >= 100);
+                        assertTrue(mf.getMessages().size() >= count);
+                        assertTrue(mf.getMessageCount(Flag.SEEN, true) <= mf.getMessageCount());
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(500, mf.getMessageCount());
+        int seen = 0;
+        for (final Message m : mf.getMessages()) {
+            if (m.isSet(Flag.SEEN)) {
+                seen++;
+            }
+        }
+        assertEquals(seen, mf.getMessageCount(Flag.SEEN, true));
+        assertEquals(seen, mf.getByFlags(new Flags(Flag.SEEN), true).size());
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        mf.add(msg); // 11
+        mf.add(msg); // 12
+        mf.add(msg); // 13
+
+        final FolderSnapshot snapshot = mf.getSnapshot();
+        final long size = snapshot.getSizeInBytes();
+        assertEquals(3, snapshot.getMessageCount());
+        assertEquals(mf.getSizeInBytesAsLong(), size);
+
+        mf.add(msg); // 14
+        mf.getById(12).setFlag(Flag.DELETED, true);
+        mf.expunge();
+
+        assertEquals(3, snapshot.getMessageCount());
+        assertEquals(size, snapshot.getSizeInBytes());
+        assertEquals(0, snapshot.getMessageCount(Flag.DELETED, true));
+        assertNotNull(snapshot.getById(12));
+        assertEquals(12, mf.getUID(snapshot.getByMsgNum(2)));
+        assertEquals(3, snapshot.getMessages().size());
+
+        final FolderSnapshot current = mf.getSnapshot();
+        assertEquals(3, current.getMessageCount());
+        assertNull(current.getById(12));
+        assertEquals(14, mf.getUID(current.getByMsgNum(3)));
+        assertTrue(current.getHighestModSeq() > snapshot.getHighestModSeq());
+    }
+
+    @Test
+    public void testAsynchronousEvents() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final List<Long> added = Collections.synchronizedList(new ArrayList<>());
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        final MailboxFolder.MailboxEventListener listener = new MailboxEventAdapter() {
+
+            @Override
+            public void messageAdded(final MailboxFolder folder, final MockMessage msg) {
+                try {
+                    blocked.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                threads.add(Thread.currentThread());
+                added.add(msg.getMockid());
+            }
+
+        };
+        mf.addMailboxEventListener(listener);
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+
+        // the listener blocks, but neither the folder nor the caller do
+        mf.add(msg); // 11
+        mf.add(msg); // 12
+        mf.add(msg); // 13
+        assertEquals(3, mf.getMessageCount());
+        assertTrue(added.isEmpty());
+
+        blocked.countDown();
+        mb.awaitEvents();
+        assertEquals(Arrays.asList(11L, 12L, 13L), added);
+        assertTrue(threads.get(0) != Thread.currentThread());
+        mf.removeMailboxEventListener(listener);
+    }
+
+    @Test
+    public void testUnchangedFlagsFireNoEvent() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+        final List<Long> changed = Collections.synchronizedList(new ArrayList<Long>());
+        final MailboxFolder.MailboxEventListener listener = new MailboxEventAdapter() {
+
+            @Override
+            public void messageChanged(final MailboxFolder folder, final MockMessage msg,
+                final boolean headerChanged, final boolean flagsChanged)
+            {
+                changed.add(msg.getMockid());
+            }
+
+        };
+        mf.addMailboxEventListener(listener);
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        mf.add(msg); // 11
+
+        final long modSeq = mf.getHighestModSeq();
+        mf.getById(11).setFlag(Flag.SEEN, true);
+        mf.getById(11).setFlag(Flag.SEEN, true);
+        mb.awaitEvents();
+        assertEquals(Collections.singletonList(11L), changed);
+        assertEquals(modSeq + 1, mf.getHighestModSeq());
+        mf.removeMailboxEventListener(listener);
+    }
+
+    @Test(timeout = 10000)
+    public void testListenerCallingFolder() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final Properties props = new Properties();
+        props.setProperty("mail.store.protocol", "mock_imaps");
+        final Store store = Session.getInstance(props).getStore();
+        store.connect("hendrik@unknown.com", null);
+        final Folder inbox = store.getFolder("INBOX");
+        inbox.open(Folder.READ_ONLY);
+
+        // the listener needs the lock of the folder, while the reader
+        // waits for the event to be delivered
+        final CountDownLatch reading = new CountDownLatch(1);
+        final List<Integer> counts = Collections.synchronizedList(new ArrayList<Integer>());
+        final MailboxFolder.MailboxEventListener listener = new MailboxEventAdapter() {
+
+            @Override
+            public void messageAdded(final MailboxFolder folder, final MockMessage msg) {
+                try {
+                    reading.await();
+                    counts.add(inbox.getMessageCount());
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (final MessagingException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+        };
+        mf.addMailboxEventListener(listener);
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        mf.add(msg); // 11
+
+        reading.countDown();
+        assertEquals(1, inbox.getMessageCount());
+        assertEquals(Collections.singletonList(1), counts);
+        inbox.close(false);
+        mf.removeMailboxEventListener(listener);
+    }
+
+    @Test
+    public void testWeakListeners() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final MailboxFolder.MailboxEventListener kept = new MailboxEventAdapter();
+        mf.addMailboxEventListener(kept);
+        mf.addMailboxEventListener(kept);
+        assertEquals(1, mf.getMailboxEventListenerCount());
+        mf.removeMailboxEventListener(kept);
+        assertEquals(0, mf.getMailboxEventListenerCount());
+
+        // garbage collection is simulated, a real one is not deterministic
+        final ListenerRegistry<Object> registry = new ListenerRegistry<>();
+        final Object first = new Object();
+        final Object second = new Object();
+        registry.add(first);
+        registry.add(second);
+        assertEquals(2, registry.size());
+
+        registry.collect(first);
+        assertEquals(1, registry.size());
+        assertEquals(Arrays.asList(second), Arrays.asList(registry.toArray(new Object[0])));
+        registry.add(first);
+        assertEquals(Arrays.asList(second, first), Arrays.asList(registry.toArray(new Object[0])));
+    }
+
+    @Test
+    public void testRawStorage() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        // the names are of the same length, so are the X-Mock-Folder headers
+        final MailboxFolder parsed = mb.getRoot().getOrAddSubFolder("txt").create();
+        final MailboxFolder raw = mb.getRoot().getOrAddSubFolder("raw").create();
+        raw.enableRawStorage(2);
+        assertTrue(raw.isRawStorageEnabled());
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        for (int i = 0; i < 5; i++) {
+            parsed.add(msg);
+            raw.add(msg);
+        }
+        // adding does not parse the raw messages
+        assertEquals(0, raw.getParsedHeaderCount());
+
+        // more messages than cached headers, evicted headers are parsed again
+        for (int i = 0; i < 5; i++) {
+            final Message expected = parsed.getByMsgNum(i + 1);
+            final Message actual = raw.getByMsgNum(i + 1);
+            assertEquals("Test", actual.getSubject());
+            assertEquals(String.valueOf(raw.getUID(actual)), actual.getHeader("Message-ID")[1]);
+            assertEquals("raw", ((MimeMessage) actual).getHeader("X-Mock-Folder", null));
+            assertEquals(expected.getContent(), actual.getContent());
+            assertEquals(expected.getSize(), actual.getSize());
+            assertEquals(((MockMessage) expected).getRfc822Size(), ((MockMessage) actual).getRfc822Size());
+            assertEquals(expected.getContentType(), actual.getContentType());
+            assertEquals("text/plain", ((MockMessage) actual).getStructure().getContentType().substring(0, 10));
+        }
+        assertEquals(2, raw.getParsedHeaderCount());
+        assertEquals(parsed.getSizeInBytesAsLong(), raw.getSizeInBytesAsLong());
+
+        raw.disableRawStorage();
+        raw.add(msg);
+        assertEquals("Test", raw.getByMsgNum(6).getSubject());
+    }
+
+    @Test
+    public void testSpilledContent() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("Some text here ...\n");
+        }
+        final MimeMessage large = new MimeMessage((Session) null);
+        large.setSubject("Large");
+        large.setFrom("from@sender.com");
+        large.setText(text.toString());
+        final MimeMessage small = new MimeMessage((Session) null);
+        small.setSubject("Small");
+        small.setFrom("from@sender.com");
+        small.setText("Some text here ...");
+
+        MockMailbox.setSpillThreshold(1024);
+        try {
+            mf.add(large); // 11
+            mf.add(small); // 12
+            mf.add(large); // 13
+        } finally {
+            MockMailbox.setSpillThreshold(Long.MAX_VALUE);
+        }
+
+        assertEquals(2, ContentStore.SHARED.size());
+        assertEquals(1, ContentStore.SHARED.getSpilledCount());
+        assertEquals(text.toString(), mf.getById(11).getContent());
+        assertEquals(text.toString(), mf.getById(13).getContent());
+        assertEquals("Some text here ...", mf.getById(12).getContent());
+
+        mf.getById(11).setFlag(Flag.DELETED, true);
+        mf.expunge();
+        assertEquals(1, ContentStore.SHARED.getSpilledCount());
+        assertEquals(text.toString(), mf.getById(13).getContent());
+
+        mf.getById(13).setFlag(Flag.DELETED, true);
+        mf.expunge();
+        assertEquals(0, ContentStore.SHARED.getSpilledCount());
+        assertEquals(1, ContentStore.SHARED.size());
+    }
+
+    @Test
+    public void testSpilledContentAfterReset() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("Some text here ...\n");
+        }
+        final MimeMessage large = new MimeMessage((Session) null);
+        large.setSubject("Large");
+        large.setFrom("from@sender.com");
+        large.setText(text.toString());
+
+        MockMailbox.setSpillThreshold(1024);
+        try {
+            mf.add(large);
+        } finally {
+            MockMailbox.setSpillThreshold(Long.MAX_VALUE);
+        }
+        final Message msg = mf.getById(11);
+        assertEquals(1, ContentStore.SHARED.getSpilledCount());
+
+        // the file is deleted, the message stays readable
+        MockMailbox.resetAll();
+        assertEquals(0, ContentStore.SHARED.getSpilledCount());
+        assertEquals(text.toString(), msg.getContent());
+        assertEquals(text.length(), msg.getSize());
+    }
+
+    @Test
+    public void testCompression() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+        assertEquals(0, mf.getCompressionStats().getMessageCount());
+
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("Some text here ...\n");
+        }
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Compressed");
+        msg.setFrom("from@sender.com");
+        msg.setText(text.toString());
+
+        mf.enableCompression(1);
+        assertTrue(mf.isCompressionEnabled());
+        mf.add(msg); // 11
+        mf.add(msg); // 12
+        mf.disableCompression();
+        mf.add(msg); // 13
+
+        final CompressionStats stats = mf.getCompressionStats();
+        assertEquals(0, stats.getMessageCount());
+        assertFalse(mf.isCompressionEnabled());
+
+        mf.enableCompression(1);
+        mf.add(msg); // 14
+        assertEquals(text.toString(), mf.getById(14).getContent());
+        assertEquals(text.toString(), mf.getById(14).getContent());
+        assertEquals(text.toString(), mf.getById(13).getContent());
+        assertEquals(mf.getById(13).getSize(), mf.getById(14).getSize());
+
+        final CompressionStats enabled = mf.getCompressionStats();
+        assertEquals(1, enabled.getMessageCount());
+        assertTrue(enabled.getCompressionRatio() > 10);
+        assertEquals(1, enabled.getDecodeCount());
+        assertEquals(1, enabled.getCacheHits());
+        // the messages added by the first codec are still readable
+        assertEquals(text.toString(), mf.getById(11).getContent());
+    }
+
+    private static class MailboxEventAdapter implements MailboxFolder.MailboxEventListener {
+
+        @Override
+        public void folderCreated(final MailboxFolder mf) {
+        }
+
+        @Override
+        public void folderDeleted(final MailboxFolder mf) {
+        }
+
+        @Override
+        public void folderRenamed(final String from, final MailboxFolder to) {
+        }
+
+        @Override
+        public void messageAdded(final MailboxFolder mf, final MockMessage msg) {
+        }
+
+        @Override
+        public void messageChanged(final MailboxFolder mf, final MockMessage msg,
+            final boolean headerChanged, final boolean flagsChanged)
+        {
+        }
+
+        @Override
+        public void messageExpunged(final MailboxFolder mf, final MockMessage msg,
+            final boolean removed)
+        {
+        }
+
+        @Override
+        public void uidInvalidated() {
+        }
+
+    }
+
 }
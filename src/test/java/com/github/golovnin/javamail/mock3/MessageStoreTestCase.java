@@ -0,0 +1,93 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class MessageStoreTestCase extends AbstractTestCase {
+
+    private static MockMessage newMessage(long uid) throws Exception {
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test " + uid);
+        msg.setText("Some text here ...");
+        return new MockMessage(msg, uid, null, null);
+    }
+
+    @Test
+    public void testAddAndLookup() throws Exception {
+        final MessageStore store = new MessageStore(2);
+        final MockMessage m20 = newMessage(20);
+        final MockMessage m10 = newMessage(10);
+        final MockMessage m30 = newMessage(30);
+        final MockMessage m15 = newMessage(15);
+        store.add(m20);
+        store.add(m10);
+        store.add(m30);
+        store.add(m15);
+
+        assertEquals(4, store.size());
+        assertEquals(10L, store.uidAt(0));
+        assertEquals(15L, store.uidAt(1));
+        assertEquals(20L, store.uidAt(2));
+        assertEquals(30L, store.uidAt(3));
+        assertSame(m15, store.get(15));
+        assertSame(m30, store.getAt(3));
+        assertNull(store.get(16));
+
+        assertEquals(1, store.lowerBound(15));
+        assertEquals(2, store.upperBound(15));
+        assertEquals(2, store.lowerBound(16));
+        assertEquals(4, store.lowerBound(31));
+        assertEquals(2, store.copyRange(1, 3).size());
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        final MessageStore store = new MessageStore();
+        for (long uid = 1; uid <= 10; uid++) {
+            store.add(newMessage(uid));
+        }
+
+        assertEquals(5L, store.remove(5).getMockid());
+        assertNull(store.remove(5));
+        assertEquals(9, store.size());
+
+        assertEquals(5, store.removeIf(m -> m.getMockid() % 2 == 0));
+        assertEquals(4, store.size());
+        assertEquals(1L, store.uidAt(0));
+        assertEquals(3L, store.uidAt(1));
+        assertEquals(7L, store.uidAt(2));
+        assertEquals(9L, store.uidAt(3));
+
+        store.clear();
+        assertEquals(0, store.size());
+        assertNull(store.get(1));
+    }
+
+}
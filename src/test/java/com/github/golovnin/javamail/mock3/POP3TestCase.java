@@ -25,7 +25,9 @@ import java.util.Arrays;
 import java.util.Properties;
 import jakarta.mail.Flags.Flag;
 import jakarta.mail.Folder;
+import jakarta.mail.Message;
 import jakarta.mail.Message.RecipientType;
+import jakarta.mail.MessageRemovedException;
 import jakarta.mail.MessagingException;
 import jakarta.mail.Session;
 import jakarta.mail.Store;
@@ -38,6 +40,7 @@ import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class POP3TestCase extends AbstractTestCase {
 
@@ -126,6 +129,123 @@ public class POP3TestCase extends AbstractTestCase {
         inbox.close(true);
     }
 
+    @Test
+    public void testSizes() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        msg.setRecipient(RecipientType.TO, new InternetAddress("hendrik@unknown.com"));
+        mf.add(msg); // 11
+        mf.add(msg); // 12
+        final MailboxFolder test = mb.getRoot().getOrAddSubFolder("test").create();
+        test.add(msg);
+
+        final Store store = session.getStore();
+        store.connect("hendrik@unknown.com", null);
+        final POP3Folder inbox = (POP3Folder) store.getFolder("INBOX");
+        inbox.open(Folder.READ_ONLY);
+
+        final int[] sizes = inbox.getSizes();
+        assertEquals(2, sizes.length);
+        assertTrue(sizes[0] > msg.getSize());
+        assertEquals(sizes[0] + sizes[1], inbox.getSize());
+        assertEquals(inbox.getSize(), mf.getSizeInBytesAsLong());
+        assertEquals(mf.getSizeInBytesAsLong() + test.getSizeInBytesAsLong(),
+            mb.getSizeInBytes());
+
+        inbox.getMessage(1).setFlag(Flag.DELETED, true);
+        inbox.close(true);
+
+        inbox.open(Folder.READ_ONLY);
+        assertEquals(sizes[1], inbox.getSize());
+        inbox.close(false);
+    }
+
+    @Test
+    public void testSessionView() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        msg.setRecipient(RecipientType.TO, new InternetAddress("hendrik@unknown.com"));
+        mf.add(msg); // 11
+        mf.add(msg); // 12
+
+        final Store store = session.getStore();
+        store.connect("hendrik@unknown.com", null);
+        final POP3Folder inbox = (POP3Folder) store.getFolder("INBOX");
+        inbox.open(Folder.READ_WRITE);
+
+        // the maildrop is fixed while the folder is open
+        mf.add(msg); // 13
+        assertEquals(2, inbox.getMessageCount());
+        assertEquals(2, inbox.getMessages().length);
+        assertEquals("12", inbox.getUID(inbox.getMessage(2)));
+        inbox.close(false);
+
+        inbox.open(Folder.READ_WRITE);
+        assertEquals(3, inbox.getMessageCount());
+        assertEquals("13", inbox.getUID(inbox.getMessage(3)));
+        assertEquals(3, inbox.getMessages(2, 3)[1].getMessageNumber());
+        inbox.close(false);
+    }
+
+    @Test
+    public void testConcurrentExpunge() throws Exception {
+        final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
+        final MailboxFolder mf = mb.getInbox();
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Test");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        msg.setRecipient(RecipientType.TO, new InternetAddress("hendrik@unknown.com"));
+        mf.add(msg); // 11
+        mf.add(msg); // 12
+        mf.add(msg); // 13
+
+        final Store store = session.getStore();
+        store.connect("hendrik@unknown.com", null);
+        final POP3Folder inbox = (POP3Folder) store.getFolder("INBOX");
+        inbox.open(Folder.READ_WRITE);
+        final int size = inbox.getSize();
+
+        // another client expunges 12, the maildrop stays as it was
+        mf.getById(12).setFlag(Flag.DELETED, true);
+        mf.expunge();
+        mf.add(msg); // 14
+        assertEquals(3, inbox.getMessageCount());
+        assertEquals(3, inbox.getSizes().length);
+        assertEquals(size, inbox.getSize());
+
+        final Message[] msgs = inbox.getMessages();
+        assertEquals(3, msgs.length);
+        assertEquals("12", inbox.getUID(msgs[1]));
+        assertTrue(msgs[1].isExpunged());
+        assertEquals(3, msgs[2].getMessageNumber());
+        assertEquals("13", inbox.getUID(msgs[2]));
+        assertTrue(inbox.getMessages(2, 3)[0].isExpunged());
+        try {
+            msgs[1].getSubject();
+            fail("expunged message must not be readable");
+        } catch (final MessageRemovedException e) {
+            // expected
+        }
+        inbox.close(false);
+
+        inbox.open(Folder.READ_WRITE);
+        assertEquals(3, inbox.getMessageCount());
+        assertEquals("14", inbox.getUID(inbox.getMessage(3)));
+        inbox.close(false);
+    }
+
     @Test(expected = MockTestException.class)
     public void testOnlyInbox() throws Exception {
         final MockMailbox mb = MockMailbox.get("hendrik@unknown.com");
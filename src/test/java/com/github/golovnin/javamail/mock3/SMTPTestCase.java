@@ -23,6 +23,7 @@ package com.github.golovnin.javamail.mock3;
 
 import java.util.Properties;
 import jakarta.mail.Address;
+import jakarta.mail.Flags.Flag;
 import jakarta.mail.Folder;
 import jakarta.mail.Message.RecipientType;
 import jakarta.mail.MessagingException;
@@ -111,4 +112,35 @@ public class SMTPTestCase extends AbstractTestCase {
         inbox.close(false);
     }
 
+    @Test
+    public void test4SendMessageToManyRecipients() throws Exception {
+        final Transport transport = session.getTransport(
+            Providers.getSMTPProvider("makes_no_difference_here", true, true));
+
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject("Newsletter");
+        msg.setFrom("from@sender.com");
+        msg.setText("Some text here ...");
+        final Address[] recipients = new Address[] {
+            new InternetAddress("first@unknown.com"),
+            new InternetAddress("second@unknown.com"),
+            new InternetAddress("third@unknown.com") };
+        msg.setRecipients(RecipientType.TO, recipients);
+        transport.sendMessage(msg, recipients);
+
+        // the content is stored once for all recipients
+        assertEquals(1, ContentStore.SHARED.size());
+        final MailboxFolder second = MockMailbox.get("second@unknown.com").getInbox();
+        assertEquals(second.getById(11).getSize(), ContentStore.SHARED.getSizeInBytes());
+        assertEquals("Some text here ...", second.getById(11).getContent());
+
+        for (final Address a : recipients) {
+            final MailboxFolder inbox = MockMailbox.get(a).getInbox();
+            assertEquals(1, ContentStore.SHARED.size());
+            inbox.getById(11).setFlag(Flag.DELETED, true);
+            inbox.expunge();
+        }
+        assertEquals(0, ContentStore.SHARED.size());
+    }
+
 }
@@ -0,0 +1,215 @@
+/*
+ *  JavaMail Mock3 Provider - open source mock classes for mock up JavaMail
+ *  =======================================================================
+ *
+ *  Copyright (C) 2014 by Hendrik Saly (http://saly.de)
+ *
+ *  Based on ideas from Kohsuke Kawaguchi's Mock-javamail
+ *  (https://java.net/projects/mock-javamail)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with
+ *  the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ *  either express or implied. See the License for the
+ *  specific language governing permissions and limitations under the License.
+ */
+package com.github.golovnin.javamail.mock3;
+
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import jakarta.mail.Flags;
+import jakarta.mail.Flags.Flag;
+import jakarta.mail.Message;
+import jakarta.mail.Message.RecipientType;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.search.AndTerm;
+import jakarta.mail.search.BodyTerm;
+import jakarta.mail.search.ComparisonTerm;
+import jakarta.mail.search.FlagTerm;
+import jakarta.mail.search.FromStringTerm;
+import jakarta.mail.search.FromTerm;
+import jakarta.mail.search.HeaderTerm;
+import jakarta.mail.search.NotTerm;
+import jakarta.mail.search.OrTerm;
+import jakarta.mail.search.RecipientTerm;
+import jakarta.mail.search.SearchTerm;
+import jakarta.mail.search.SizeTerm;
+import jakarta.mail.search.SubjectTerm;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SearchTestCase extends AbstractTestCase {
+
+    private static MimeMessage newMessage(String subject, String from,
+        String to, String priority) throws Exception
+    {
+        final MimeMessage msg = new MimeMessage((Session) null);
+        msg.setSubject(subject);
+        msg.setFrom(from);
+        msg.setText("Some text here ...");
+        msg.setRecipient(RecipientType.TO, new InternetAddress(to));
+        if (priority != null) {
+            msg.setHeader("X-Priority", priority);
+        }
+        return msg;
+    }
+
+    private static MailboxFolder fill(MailboxFolder mf) throws Exception {
+        mf.add(newMessage("Hello World", "alice@sender.com", "bob@unknown.com", "1")); // 11
+        mf.add(newMessage("Weekly report", "Bob@Sender.com", "alice@unknown.com", null)); // 12
+        mf.add(newMessage("RE: hello again", "carol@sender.com", "bob@unknown.com", "3")); // 13
+        mf.add(newMessage("Lunch", "alice@sender.com", "dave@unknown.com", "1")); // 14
+        return mf;
+    }
+
+    private static void assertSameResult(MailboxFolder mf, SearchTerm term,
+        long... expectedUids) throws Exception
+    {
+        mf.disableSearchIndex();
+        assertUids(mf, mf.search(term, null), expectedUids);
+
+        mf.enableSearchIndex("X-Priority");
+        assertTrue(mf.isSearchIndexEnabled());
+        assertUids(mf, mf.search(term, null), expectedUids);
+    }
+
+    private static void assertUids(MailboxFolder mf, Collection<Message> msgs,
+        long... expectedUids)
+    {
+        assertEquals(expectedUids.length, msgs.size());
+        int i = 0;
+        for (Message msg : msgs) {
+            assertEquals(expectedUids[i++], mf.getUID(msg));
+        }
+    }
+
+    @Test
+    public void testIndexedSearch() throws Exception {
+        final MailboxFolder mf = fill(MockMailbox.get("hendrik@unknown.com").getInbox());
+
+        assertSameResult(mf, new SubjectTerm("hello"), 11, 13);
+        assertSameResult(mf, new SubjectTerm("HELLO WOR"), 11);
+        assertSameResult(mf, new SubjectTerm("xyz"));
+        assertSameResult(mf, new SubjectTerm("lo"), 11, 13);
+        assertSameResult(mf, new FromTerm(new InternetAddress("bob@sender.com")), 12);
+        assertSameResult(mf, new FromStringTerm("alice@"), 11, 14);
+        assertSameResult(mf, new RecipientTerm(RecipientType.TO,
+            new InternetAddress("bob@unknown.com")), 11, 13);
+        assertSameResult(mf, new HeaderTerm("X-Priority", "1"), 11, 14);
+        assertSameResult(mf, new AndTerm(new FromStringTerm("alice"),
+            new SubjectTerm("lunch")), 14);
+        assertSameResult(mf, new OrTerm(new SubjectTerm("report"),
+            new SubjectTerm("lunch")), 12, 14);
+    }
+
+    @Test
+    public void testIndexMaintenance() throws Exception {
+        final MailboxFolder mf = fill(MockMailbox.get("hendrik@unknown.com").getInbox());
+        mf.enableSearchIndex();
+
+        mf.getById(11).setFlag(Flag.DELETED, true);
+        mf.expunge();
+        assertUids(mf, mf.search(new SubjectTerm("hello"), null), 13);
+
+        mf.add(newMessage("Hello there", "eve@sender.com", "bob@unknown.com", null)); // 15
+        assertUids(mf, mf.search(new SubjectTerm("hello"), null), 13, 15);
+
+        mf.disableSearchIndex();
+        assertFalse(mf.isSearchIndexEnabled());
+        assertUids(mf, mf.search(new SubjectTerm("hello"), null), 13, 15);
+    }
+
+    @Test
+    public void testPlannedSearch() throws Exception {
+        final MailboxFolder mf = fill(MockMailbox.get("hendrik@unknown.com").getInbox());
+        mf.getById(12).setFlag(Flag.SEEN, true);
+        mf.getById(14).setFlag(Flag.SEEN, true);
+        mf.getById(14).setFlag(Flag.FLAGGED, true);
+
+        final FlagTerm seen = new FlagTerm(new Flags(Flag.SEEN), true);
+        final FlagTerm unseen = new FlagTerm(new Flags(Flag.SEEN), false);
+        assertSameResult(mf, seen, 12, 14);
+        assertSameResult(mf, unseen, 11, 13);
+        assertSameResult(mf, new NotTerm(seen), 11, 13);
+        assertSameResult(mf, new FlagTerm(new Flags(Flag.FLAGGED), false), 11, 12, 13);
+        assertSameResult(mf, new AndTerm(seen, new FromStringTerm("alice")), 14);
+        assertSameResult(mf, new AndTerm(unseen, new BodyTerm("text")), 11, 13);
+        assertSameResult(mf, new AndTerm(new SizeTerm(ComparisonTerm.GT, 0),
+            new NotTerm(new SubjectTerm("hello"))), 12, 14);
+        assertSameResult(mf, new OrTerm(seen, new SubjectTerm("again")), 12, 13, 14);
+        assertSameResult(mf, new NotTerm(new OrTerm(seen, new HeaderTerm("X-Priority", "3"))), 11);
+
+        mf.getById(13).setFlag(Flag.SEEN, true);
+        assertSameResult(mf, unseen, 11);
+    }
+
+    @Test
+    public void testExplainSearch() throws Exception {
+        final MailboxFolder mf = fill(MockMailbox.get("hendrik@unknown.com").getInbox());
+        mf.enableSearchIndex();
+        mf.getById(12).setFlag(Flag.SEEN, true);
+
+        final String plan = mf.explainSearch(new AndTerm(new SearchTerm[] {
+            new BodyTerm("text"),
+            new SubjectTerm("report"),
+            new FlagTerm(new Flags(Flag.SEEN), true)
+        }));
+        final String[] lines = plan.split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("AndTerm "));
+        assertTrue(lines[0], lines[0].endsWith("index=candidates candidates=1"));
+        // children are evaluated cheapest first
+        assertTrue(lines[1], lines[1].startsWith("  FlagTerm set "));
+        assertTrue(lines[1], lines[1].endsWith("index=exact candidates=1"));
+        assertTrue(lines[2], lines[2].startsWith("  SubjectTerm \"report\""));
+        assertTrue(lines[2], lines[2].endsWith("index=candidates candidates=1"));
+        assertTrue(lines[3], lines[3].startsWith("  BodyTerm \"text\""));
+        assertTrue(lines[3], lines[3].endsWith(" scan"));
+    }
+
+    @Test
+    public void testParallelSearch() throws Exception {
+        final MailboxFolder mf = MockMailbox.get("hendrik@unknown.com").getInbox();
+        for (int i = 0; i < 2000; i++) {
+            final MimeMessage msg = newMessage("Message " + i, "alice@sender.com",
+                "bob@unknown.com", null);
+            msg.setText(i % 7 == 0 ? "needle" : "haystack");
+            mf.add(msg);
+        }
+        final SearchTerm term = new BodyTerm("needle");
+        final Collection<Message> expected = mf.search(term, null);
+        assertEquals(286, expected.size());
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            mf.enableParallelSearch(pool, 100);
+            assertTrue(mf.isParallelSearchEnabled());
+            final Collection<Message> actual = mf.search(term, null);
+            assertEquals(expected.size(), actual.size());
+            long previous = 0;
+            for (Message msg : actual) {
+                // in UID order with correct message numbers
+                assertTrue(mf.getUID(msg) > previous);
+                previous = mf.getUID(msg);
+                assertEquals(previous - 10, msg.getMessageNumber());
+            }
+        } finally {
+            mf.disableParallelSearch();
+            pool.shutdown();
+        }
+        assertFalse(mf.isParallelSearchEnabled());
+    }
+
+}